@@ -6,26 +6,41 @@
  */
 package net.gicode.tomb;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.swing.JOptionPane;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
-
+import net.gicode.tomb.crypto.AeadAlgorithm;
+import net.gicode.tomb.crypto.Argon2Calibrator;
+import net.gicode.tomb.crypto.CipherBackend;
+import net.gicode.tomb.crypto.CipherBenchmark;
+import net.gicode.tomb.crypto.KdfParameters;
 import net.gicode.tomb.entry.Entry;
 import net.gicode.tomb.entry.FolderEntry;
+import net.gicode.tomb.entry.ConcurrencyBenchmark;
+import net.gicode.tomb.entry.EntryDifference;
+import net.gicode.tomb.entry.JsonCodecBenchmark;
+import net.gicode.tomb.entry.JsonEntryCodec;
 import net.gicode.tomb.entry.PasswordEntry;
 import net.gicode.tomb.entry.RootEntry;
+import net.gicode.tomb.io.PayloadCodec;
 
 public class TombCLI {
+	private static final int BENCHMARK_SIZE = 64 * 1024 * 1024;
+	private static final int[] BENCHMARK_ENTRIES = { 10000, 100000 };
+	private static final int BENCHMARK_CHANGES = 100000;
+
 	private TombFile file = new TombFile();
 
 	public void init(String location, String password) {
@@ -34,7 +49,16 @@ public class TombCLI {
 
 	public void exportJSON(String location, String password) {
 		load(location, password);
-		System.out.println(file.getRoot().export(2));
+
+		try {
+			OutputStream out = new BufferedOutputStream(System.out);
+			file.getRoot().export(out, 2);
+			out.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
 	}
 
 	private void importJSON(String location) {
@@ -53,8 +77,8 @@ public class TombCLI {
 
 		RootEntry root = null;
 		try {
-			root = new RootEntry(new JSONObject(new JSONTokener(result.toString("UTF-8"))));
-		} catch (JSONException | UnsupportedEncodingException e) {
+			root = JsonEntryCodec.read(new ByteArrayInputStream(result.toByteArray()));
+		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(1);
 		}
@@ -152,6 +176,74 @@ public class TombCLI {
 		}
 	}
 
+	public void show(String location, String password, String id) {
+		UUID uuid = null;
+		try {
+			uuid = UUID.fromString(id);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Invalid ID: " + id);
+			System.exit(1);
+		}
+
+		load(location, password);
+
+		Entry entry = file.getRoot().findById(uuid);
+		if (entry == null) {
+			System.err.println("No entry with ID " + id);
+			System.exit(1);
+		}
+
+		List<String> parents = new LinkedList<String>();
+		for (FolderEntry folder = entry.getParent(); (folder != null) && (folder.getParent() != null); folder = folder
+				.getParent()) {
+			parents.add(0, folder.getName());
+		}
+
+		System.out.println("Folder: " + String.join(" > ", parents));
+		System.out.println();
+		System.out.println(entry);
+	}
+
+	public void diff(String location, String password, String otherLocation, String otherPassword) {
+		load(location, password);
+		RootEntry before = file.getRoot();
+		file = new TombFile();
+		load(otherLocation, otherPassword);
+		RootEntry after = file.getRoot();
+
+		List<EntryDifference> differences = EntryDifference.compare(before, after);
+		if (differences.isEmpty()) {
+			System.out.println("No differences.");
+			return;
+		}
+
+		for (EntryDifference difference : differences) {
+			switch (difference.getType()) {
+			case ADDED:
+				System.out.println("Added: " + describe(difference.getAfter()));
+				break;
+			case REMOVED:
+				System.out.println("Removed: " + describe(difference.getBefore()));
+				break;
+			case CHANGED:
+				System.out.println("Changed: " + describe(difference.getAfter()));
+				break;
+			case MOVED:
+				System.out.println("Moved: " + describe(difference.getBefore()) + " to " + describe(difference.getAfter()));
+				break;
+			}
+		}
+	}
+
+	private static String describe(Entry entry) {
+		List<String> names = new LinkedList<String>();
+		for (Entry current = entry; (current != null) && (current.getParent() != null); current = current.getParent()) {
+			names.add(0, current.getName());
+		}
+		String path = names.isEmpty() ? "Top level" : String.join(" > ", names);
+		return path + " (" + entry.getId() + ")";
+	}
+
 	private void load(String location, String password) {
 		try {
 			file.load(location, password);
@@ -170,6 +262,107 @@ public class TombCLI {
 		}
 	}
 
+	private void calibrate(long targetMillis) {
+		System.out.println("Calibrating Argon2 for " + targetMillis + " ms...");
+
+		Argon2Calibrator calibrator = new Argon2Calibrator(TombFile.DEFAULT_KDF_PARAMETERS);
+		KdfParameters parameters = calibrator.calibrate(targetMillis);
+		new TombPreferences().storeKdfParameters(parameters);
+
+		System.out.println("Argon2: " + parameters + " (" + calibrator.getLastMillis() + " ms)");
+		System.out.println("Used for new tombs and password changes.");
+	}
+
+	private void cipher(String name) {
+		TombPreferences preferences = new TombPreferences();
+
+		if (name != null) {
+			AeadAlgorithm algorithm = AeadAlgorithm.forName(name);
+			if ((algorithm == null) && !name.equals("auto")) {
+				System.err.println("Unknown cipher: " + name);
+				System.exit(1);
+			}
+			preferences.storeCipher(algorithm);
+		}
+
+		AeadAlgorithm algorithm = preferences.readCipher();
+		if (algorithm == null) {
+			System.out.println("Cipher: auto (" + AeadAlgorithm.fastest() + " on this machine)");
+		} else {
+			System.out.println("Cipher: " + algorithm);
+		}
+		System.out.println("Used for new tombs and the next save of existing ones.");
+	}
+
+	private void compression(String name) {
+		TombPreferences preferences = new TombPreferences();
+
+		if (name != null) {
+			PayloadCodec codec = PayloadCodec.forName(name);
+			if ((codec == null) && !name.equals("auto")) {
+				System.err.println("Unknown compression: " + name);
+				System.exit(1);
+			}
+			preferences.storeCompression(codec);
+		}
+
+		PayloadCodec codec = preferences.readCompression();
+		if (codec == null) {
+			System.out.println("Compression: auto (" + TombFile.DEFAULT_CODEC + ", level chosen by size)");
+		} else {
+			System.out.println("Compression: " + codec);
+		}
+		System.out.println("Used for the next full save of each tomb.");
+	}
+
+	private void benchmark() {
+		for (AeadAlgorithm algorithm : AeadAlgorithm.values()) {
+			for (CipherBackend backend : CipherBackend.getBackends()) {
+				if (!backend.supports(algorithm)) {
+					System.out.println(algorithm + " (" + backend.getName() + "): unavailable");
+					continue;
+				}
+
+				CipherBenchmark benchmark = new CipherBenchmark(backend, algorithm);
+				try {
+					benchmark.run(BENCHMARK_SIZE);
+				} catch (IOException | GeneralSecurityException e) {
+					System.out.println(algorithm + " (" + backend.getName() + "): failed (" + e.getMessage() + ")");
+					continue;
+				}
+
+				System.out.println(String.format("%s (%s): encrypt %.1f MB/s, decrypt %.1f MB/s", algorithm,
+						backend.getName(), benchmark.getEncryptRate(), benchmark.getDecryptRate()));
+			}
+		}
+
+		for (int entries : BENCHMARK_ENTRIES) {
+			JsonCodecBenchmark benchmark = new JsonCodecBenchmark();
+			try {
+				benchmark.run(entries);
+			} catch (IOException e) {
+				System.out.println("JSON " + entries + " entries: failed (" + e.getMessage() + ")");
+				continue;
+			}
+
+			System.out.println(String.format(
+					"JSON %d entries (%.1f MB): write %.0f ms (org.json %.0f ms), read %.0f ms (org.json %.0f ms)",
+					entries, benchmark.getSize() / (1024.0 * 1024.0), benchmark.getWriteMillis(),
+					benchmark.getJsonWriteMillis(), benchmark.getReadMillis(), benchmark.getJsonReadMillis()));
+		}
+
+		ConcurrencyBenchmark concurrency = new ConcurrencyBenchmark();
+		try {
+			concurrency.run(BENCHMARK_ENTRIES[0], BENCHMARK_CHANGES);
+		} catch (IOException | IllegalStateException e) {
+			System.out.println("Concurrent access: failed (" + e.getMessage() + ")");
+			return;
+		}
+		System.out.println(String.format("Concurrent access (%d readers): %d reads, %d changes, %d saves in %.0f ms",
+				concurrency.getReaders(), concurrency.getReads(), concurrency.getWrites(), concurrency.getSaves(),
+				concurrency.getMillis()));
+	}
+
 	private void generate(int length) {
 		for (int c = 0; c < 10; ++c) {
 			System.out.println(RandomPassword.generate(length));
@@ -241,6 +434,50 @@ public class TombCLI {
 
 			cli.listFolder(args[1], readPassword(), folders);
 			break;
+		case "show":
+			verifyArgsLength(args, 3);
+
+			cli.show(args[1], readPassword(), args[2]);
+			break;
+		case "diff":
+			verifyArgsLength(args, 3);
+
+			cli.diff(args[1], readPassword(args[1]), args[2], readPassword(args[2]));
+			break;
+		case "calibrate":
+			if (args.length > 2) {
+				System.err.println("Wrong number of arguments (" + args.length + ").  Need 0 or 1.");
+				System.exit(1);
+			}
+
+			long targetMillis = 1000;
+			if (args.length == 2) {
+				targetMillis = Long.parseLong(args[1]);
+			}
+
+			cli.calibrate(targetMillis);
+			break;
+		case "cipher":
+			if (args.length > 2) {
+				System.err.println("Wrong number of arguments (" + args.length + ").  Need 0 or 1.");
+				System.exit(1);
+			}
+
+			cli.cipher((args.length == 2) ? args[1] : null);
+			break;
+		case "compression":
+			if (args.length > 2) {
+				System.err.println("Wrong number of arguments (" + args.length + ").  Need 0 or 1.");
+				System.exit(1);
+			}
+
+			cli.compression((args.length == 2) ? args[1] : null);
+			break;
+		case "benchmark":
+			verifyArgsLength(args, 1);
+
+			cli.benchmark();
+			break;
 		case "generate":
 			if (args.length > 2) {
 				System.err.println("Wrong number of arguments (" + args.length + ").  Need 0 or 1.");
@@ -271,7 +508,13 @@ public class TombCLI {
 			System.err.println("  remove FILE [FOLDER...] NAME");
 			System.err.println("  search FILE KEYWORD");
 			System.err.println("  listFolder FILE FOLDER...");
+			System.err.println("  show FILE ID");
+			System.err.println("  diff FILE OTHER_FILE");
 			System.err.println("  generate [LENGTH]");
+			System.err.println("  calibrate [MILLISECONDS]");
+			System.err.println("  cipher [auto|aes-gcm|chacha20-poly1305]");
+			System.err.println("  compression [auto|none|deflate]");
+			System.err.println("  benchmark");
 		}
 	}
 
@@ -279,6 +522,10 @@ public class TombCLI {
 		return new String(System.console().readPassword("Password: "));
 	}
 
+	private static String readPassword(String location) {
+		return new String(System.console().readPassword("Password for %s: ", location));
+	}
+
 	private static void verifyArgsLength(String[] args, int length) {
 		if (args.length != length) {
 			System.err.println("Wrong number of arguments (" + args.length + ").  Need " + length + ".");
@@ -9,38 +9,59 @@ package net.gicode.tomb;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
-import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.InflaterInputStream;
 
+import javax.crypto.AEADBadTagException;
+
 import org.apache.commons.io.IOUtils;
-import org.bouncycastle.crypto.engines.AESEngine;
-import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.bouncycastle.crypto.generators.BCrypt;
-import org.bouncycastle.crypto.io.CipherInputStream;
-import org.bouncycastle.crypto.io.CipherOutputStream;
-import org.bouncycastle.crypto.modes.AEADBlockCipher;
-import org.bouncycastle.crypto.modes.GCMBlockCipher;
-import org.bouncycastle.crypto.params.AEADParameters;
-import org.bouncycastle.crypto.params.Argon2Parameters;
-import org.bouncycastle.crypto.params.KeyParameter;
-import org.json.JSONObject;
-import org.json.JSONTokener;
-
-import net.gicode.tomb.entry.Entry;
-import net.gicode.tomb.entry.FolderEntry;
+
+import net.gicode.tomb.crypto.AeadAlgorithm;
+import net.gicode.tomb.crypto.AeadCipher;
+import net.gicode.tomb.crypto.Argon2;
+import net.gicode.tomb.crypto.ChunkedPayloadInputStream;
+import net.gicode.tomb.crypto.ChunkedPayloadOutputStream;
+import net.gicode.tomb.crypto.CipherBackend;
+import net.gicode.tomb.crypto.KdfParameters;
+import net.gicode.tomb.crypto.KeyEnvelope;
+import net.gicode.tomb.crypto.SegmentedCipherInputStream;
+import net.gicode.tomb.crypto.SegmentedCipherOutputStream;
+import net.gicode.tomb.entry.BinaryEntryCodec;
+import net.gicode.tomb.entry.EntryChange;
+import net.gicode.tomb.entry.EntryListener;
+import net.gicode.tomb.entry.EntrySnapshot;
+import net.gicode.tomb.entry.JsonEntryCodec;
 import net.gicode.tomb.entry.RootEntry;
+import net.gicode.tomb.io.AtomicFileOutputStream;
+import net.gicode.tomb.io.ByteBufferInputStream;
+import net.gicode.tomb.io.PayloadCodec;
+import net.gicode.tomb.io.PipelineOutputStream;
 
 public class TombFile {
 	public static final String SOFTWARE_VERSION = Objects
@@ -50,16 +71,48 @@ public class TombFile {
 	private static final byte[] PREVIOUS_MAGIC = { '.', 'T', 'O', 'M', 'B', (byte) 0xC3, (byte) 0xBF };
 	private static final byte CONTAINER_VERSION_BCRYPT = 2; // Deprecated
 	private static final byte CONTAINER_VERSION_ARGON2ID = 3;
+	private static final byte CONTAINER_VERSION_SEGMENTED = 4;
+	private static final byte CONTAINER_VERSION_WRAPPED_KEY = 5;
+	private static final byte CONTAINER_VERSION_ALGORITHM = 6;
+	private static final byte CONTAINER_VERSION_LAYOUT = 7;
+	private static final byte CONTAINER_VERSION_ENCODING = 8;
+	private static final byte CONTAINER_VERSION_CODEC = 9;
+
+	private static final byte LAYOUT_SEGMENTED = 0;
+	// Chunk table before the chunks, so nothing could be written until every chunk was done
+	private static final byte LAYOUT_CHUNKED_TABLE_FIRST = 1;
+	private static final byte LAYOUT_CHUNKED = 2;
+
+	private static final byte ENCODING_JSON = 0;
+	private static final byte ENCODING_BINARY = 1;
+
+	public static final PayloadCodec DEFAULT_CODEC = PayloadCodec.DEFLATE;
+	// Files before version 9 don't record their codec
+	private static final PayloadCodec LEGACY_CODEC = PayloadCodec.DEFLATE;
+	// Compressing hard is cheap below the first size, and costs more than it saves above the second
+	private static final long BEST_COMPRESSION_SIZE = 256 * 1024;
+	private static final long FAST_COMPRESSION_SIZE = 8 * 1024 * 1024;
+
+	// Payloads at least this large are split into chunks when there are cores to spare
+	private static final long CHUNKED_THRESHOLD = 4 * ChunkedPayloadOutputStream.CHUNK_SIZE;
+
+	// Rewrite the whole file once the journal passes this, or a quarter of the payload
+	private static final long JOURNAL_COMPACTION_SIZE = 256 * 1024;
 
 	private static final int SALT_SIZE = 128 / 8;
 	private static final int ARGON2_MEMORY = 1 << 20; // 1GB
 	private static final int ARGON2_ITERATIONS = 1;
 	private static final int ARGON2_PARALLELISM = 1;
+	public static final KdfParameters DEFAULT_KDF_PARAMETERS = new KdfParameters(ARGON2_MEMORY, ARGON2_ITERATIONS,
+			ARGON2_PARALLELISM);
 
+	// Files before version 6 don't record their algorithm
+	private static final AeadAlgorithm LEGACY_ALGORITHM = AeadAlgorithm.AES_GCM;
 	private static final int IV_SIZE = 96 / 8;
-	private static final int AES_KEY_SIZE = 128 / 8;
 
-	private static final int JSON_INDENT = 2;
+	// Windows won't replace a file that is still mapped, and a mapping lasts until it is
+	// garbage collected, so files are read into the heap there instead.
+	private static final boolean MAP_FILES = !System.getProperty("os.name", "").startsWith("Windows");
 
 	static {
 		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
@@ -67,12 +120,32 @@ public class TombFile {
 
 	private RootEntry root;
 
+	// Cached after unlocking, so later saves with the same password skip Argon2
+	private String password = null;
+	private KeyEnvelope keyEnvelope = null;
+
+	// Uncompressed size of the last payload loaded or saved
+	private long payloadSize = 0;
+
+	// The file last loaded or saved, so later saves can append to its journal instead
+	private String location = null;
+	private byte[] noncePrefix = null;
+	private long fileSize = 0;
+	private FileTime fileModified = null;
+	private TombJournal journal = null;
+	// Changes not yet in the file. Added by whoever edits the tree and removed by saves,
+	// which may run on another thread.
+	private final List<EntryChange> changes = new ArrayList<EntryChange>();
+	private final EntryListener changeListener = this::changed;
+
 	public TombFile() {
 		root = new RootEntry();
+		root.addEntryListener(changeListener);
 	}
 
 	public TombFile(RootEntry root) {
 		this.root = root;
+		root.addEntryListener(changeListener);
 	}
 
 	public RootEntry getRoot() {
@@ -80,6 +153,71 @@ public class TombFile {
 	}
 
 	public void save(String location, String password) throws TombException {
+		prepareSave(location, password).run();
+	}
+
+	/**
+	 * Captures the tree for a save that can then run on another thread while editing
+	 * continues. Any thread can call it, since the capture holds the tree's read lock.
+	 * Saves of one file must run one at a time.
+	 */
+	public PreparedSave prepareSave(String location, String password) {
+		// Changes are recorded under the write lock, so none can land between the steps
+		return root.read(() -> {
+			List<EntryChange> saved;
+			synchronized (changes) {
+				saved = new ArrayList<EntryChange>(changes);
+			}
+			return new PreparedSave(location, password, root.snapshot(), saved, root.getGeneration());
+		});
+	}
+
+	public class PreparedSave {
+		private final String location;
+		private final String password;
+		private final EntrySnapshot snapshot;
+		private final List<EntryChange> savedChanges;
+		private final long generation;
+
+		private PreparedSave(String location, String password, EntrySnapshot snapshot,
+				List<EntryChange> savedChanges, long generation) {
+			this.location = location;
+			this.password = password;
+			this.snapshot = snapshot;
+			this.savedChanges = savedChanges;
+			this.generation = generation;
+		}
+
+		/**
+		 * The tree's generation when the save was prepared.
+		 */
+		public long getGeneration() {
+			return generation;
+		}
+
+		public void run() throws TombException {
+			try {
+				save(location, password, snapshot, savedChanges);
+			} finally {
+				snapshot.close();
+			}
+		}
+	}
+
+	private void changed(EntryChange change) {
+		synchronized (changes) {
+			changes.add(change);
+		}
+	}
+
+	private void removeSavedChanges(int count) {
+		synchronized (changes) {
+			changes.subList(0, count).clear();
+		}
+	}
+
+	private void save(String location, String password, EntrySnapshot snapshot, List<EntryChange> savedChanges)
+			throws TombException {
 		SecureRandom random;
 
 		try {
@@ -91,43 +229,185 @@ public class TombFile {
 			return;
 		}
 
-		try (OutputStream out = new FileOutputStream(location); DataOutputStream dout = new DataOutputStream(out)) {
-			dout.write(MAGIC);
-			dout.write(CONTAINER_VERSION_ARGON2ID);
+		TombPreferences preferences = new TombPreferences();
+
+		// Without an explicit setting, keep the existing algorithm or pick the faster one here
+		AeadAlgorithm algorithm = preferences.readCipher();
+		if (algorithm == null) {
+			algorithm = (keyEnvelope != null) ? keyEnvelope.getAlgorithm() : AeadAlgorithm.fastest();
+		}
 
-			byte[] salt = new byte[SALT_SIZE];
-			random.nextBytes(salt);
-			dout.write(salt);
-			dout.writeInt(ARGON2_MEMORY);
-			dout.writeInt(ARGON2_ITERATIONS);
-			dout.writeInt(ARGON2_PARALLELISM);
+		if (canAppendJournal(location, password, algorithm)) {
+			appendJournal(location, random, savedChanges);
+			return;
+		}
 
-			byte[] key = computeArgon2(password, salt, ARGON2_MEMORY, ARGON2_ITERATIONS, ARGON2_PARALLELISM);
-			KeyParameter keySpec = new KeyParameter(key);
+		// Kept aside until the file is written, since later saves append to the journal under it
+		KeyEnvelope envelope = keyEnvelope;
+		AeadCipher cipher;
+		try {
+			if ((envelope == null) || !isCachedPassword(password) || (envelope.getAlgorithm() != algorithm)) {
+				// Keep the existing data key, so a password change only rewraps it
+				byte[] dataKey = ((envelope == null) || (envelope.getAlgorithm() != algorithm))
+						? KeyEnvelope.generateDataKey(algorithm, random)
+						: envelope.getDataKey();
 
-			byte[] iv = new byte[IV_SIZE];
-			random.nextBytes(iv);
-			dout.write(iv);
+				// Use this machine's calibrated parameters, if any
+				KdfParameters parameters = preferences.readKdfParameters(DEFAULT_KDF_PARAMETERS);
 
-			AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine());
-			cipher.init(true, new AEADParameters(keySpec, 128, iv));
+				byte[] salt = new byte[SALT_SIZE];
+				random.nextBytes(salt);
+				byte[] wrappingKey = computeArgon2(password, salt, parameters, algorithm);
 
-			try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(new CipherOutputStream(dout, cipher))) {
-				deflaterStream.write(root.export(JSON_INDENT).getBytes("UTF-8"));
+				envelope = KeyEnvelope.wrap(algorithm, wrappingKey, salt, parameters, dataKey, random);
 			}
-		} catch (FileNotFoundException e) {
+			cipher = CipherBackend.newDefaultCipher(algorithm, envelope.getDataKey());
+		} catch (GeneralSecurityException e) {
+			throw new TombException("Unable to initialize encryption (" + e.getMessage() + ").");
+		}
+
+		boolean chunked = (Runtime.getRuntime().availableProcessors() > 1) && (payloadSize >= CHUNKED_THRESHOLD);
+
+		PayloadCodec codec = preferences.readCompression();
+		if (codec == null) {
+			codec = DEFAULT_CODEC;
+		}
+		int level = compressionLevel(payloadSize);
+
+		// The existing file stays intact and readable until the new one is complete
+		AtomicFileOutputStream out;
+		try {
+			out = new AtomicFileOutputStream(Paths.get(location));
+		} catch (IOException | InvalidPathException e) {
 			throw new TombException("Unable to open file " + location + " for writing.");
+		}
+
+		try (DataOutputStream dout = new DataOutputStream(out)) {
+			dout.write(MAGIC);
+			dout.write(CONTAINER_VERSION_CODEC);
+			dout.write(algorithm.getId());
+			dout.write(chunked ? LAYOUT_CHUNKED : LAYOUT_SEGMENTED);
+			dout.write(ENCODING_BINARY);
+			dout.write(codec.getId());
+			envelope.write(dout);
+
+			byte[] noncePrefix = new byte[SegmentedCipherOutputStream.NONCE_PREFIX_SIZE];
+			random.nextBytes(noncePrefix);
+			dout.write(noncePrefix);
+
+			// Stream the entries straight through compression and encryption, rather than building the
+			// whole export in memory first. With more than one core, large payloads are split
+			// into chunks that compress and encrypt in parallel, and otherwise each stage gets a
+			// thread.
+			OutputStream payload;
+			if (chunked) {
+				payload = new ChunkedPayloadOutputStream(dout, algorithm, envelope.getDataKey(), noncePrefix,
+						codec, level);
+			} else {
+				OutputStream encrypted = new SegmentedCipherOutputStream(pipelined(dout, "Tomb save: write"),
+						cipher, noncePrefix);
+				OutputStream compressed = codec.compress(pipelined(encrypted, "Tomb save: encrypt"), level);
+				payload = pipelined(compressed, "Tomb save: compress");
+			}
+
+			// JSON remains available through export
+			CountingOutputStream counter = new CountingOutputStream(payload);
+			try (OutputStream binary = counter) {
+				BinaryEntryCodec.write(snapshot, binary);
+			}
+			payloadSize = counter.getByteCount();
+
+			out.commit();
+			this.password = password;
+			keyEnvelope = envelope;
+
+			// Everything in the old journal is in the new file now
+			TombJournal.delete(location);
+			opened(location, noncePrefix, null);
+			removeSavedChanges(savedChanges.size());
 		} catch (IOException e) {
 			throw new TombException("Error writing file " + location + " (" + e.getMessage() + ").");
 		} finally {
-			// Encourage the JVM to release our Argon2 memory.
-			System.gc();
+			out.discard();
+		}
+	}
+
+	private static int compressionLevel(long payloadSize) {
+		if (payloadSize < BEST_COMPRESSION_SIZE) {
+			return Deflater.BEST_COMPRESSION;
+		} else if (payloadSize < FAST_COMPRESSION_SIZE) {
+			return Deflater.DEFAULT_COMPRESSION;
+		}
+		return Deflater.BEST_SPEED;
+	}
+
+	private boolean canAppendJournal(String location, String password, AeadAlgorithm algorithm) {
+		if ((noncePrefix == null) || !location.equals(this.location) || (keyEnvelope == null)
+				|| !isCachedPassword(password) || (keyEnvelope.getAlgorithm() != algorithm)) {
+			return false;
+		}
+
+		// Rewrite the file if someone else has, or once the journal grows too large
+		if (!isFileUnchanged()) {
+			return false;
+		}
+		if (journal != null) {
+			long limit = Math.max(JOURNAL_COMPACTION_SIZE, payloadSize / 4);
+			return journal.canAppend() && journal.isCurrent() && (journal.size() < limit);
+		}
+		return true;
+	}
+
+	private void appendJournal(String location, SecureRandom random, List<EntryChange> savedChanges)
+			throws TombException {
+		if (savedChanges.isEmpty()) {
+			return;
+		}
+
+		try {
+			if (journal == null) {
+				journal = TombJournal.create(location, keyEnvelope.getAlgorithm(), keyEnvelope.getDataKey(),
+						noncePrefix, random);
+			}
+			journal.append(savedChanges);
+			removeSavedChanges(savedChanges.size());
+		} catch (IOException | GeneralSecurityException e) {
+			throw new TombException(
+					"Error writing file " + TombJournal.pathFor(location) + " (" + e.getMessage() + ").");
+		}
+	}
+
+	private void opened(String location, byte[] noncePrefix, TombJournal journal) {
+		this.location = location;
+		this.noncePrefix = noncePrefix;
+		this.journal = journal;
+
+		try {
+			Path path = Paths.get(location);
+			fileSize = Files.size(path);
+			fileModified = Files.getLastModifiedTime(path);
+		} catch (IOException e) {
+			fileModified = null;
+		}
+	}
+
+	private boolean isFileUnchanged() {
+		try {
+			Path path = Paths.get(location);
+			return (fileModified != null) && (Files.size(path) == fileSize)
+					&& fileModified.equals(Files.getLastModifiedTime(path));
+		} catch (IOException e) {
+			return false;
 		}
 	}
 
 	public void load(String location, String password) throws TombException {
 
-		try (InputStream in = new FileInputStream(location); DataInputStream din = new DataInputStream(in)) {
+		try {
+			// The header is parsed from the file contents in place, and the payload is
+			// decrypted straight out of them.
+			ByteBuffer contents = readContents(location);
+			DataInputStream din = new DataInputStream(new ByteBufferInputStream(contents));
 
 			byte[] magic = new byte[MAGIC.length];
 			din.readFully(magic);
@@ -137,6 +417,11 @@ public class TombFile {
 
 			byte version = din.readByte();
 			byte[] key = null;
+			KeyEnvelope envelope = null;
+			AeadAlgorithm algorithm = LEGACY_ALGORITHM;
+			byte layout = LAYOUT_SEGMENTED;
+			byte encoding = ENCODING_JSON;
+			PayloadCodec codec = LEGACY_CODEC;
 
 			if (version == CONTAINER_VERSION_BCRYPT) {
 				// Deprecated
@@ -150,81 +435,210 @@ public class TombFile {
 				// same (e.g. testtest is equivalent to test).
 				key = BCrypt.generate((password + "\000").getBytes("UTF-8"), salt, bcrypt_cost);
 
-			} else if (version == CONTAINER_VERSION_ARGON2ID) {
+			} else if ((version >= CONTAINER_VERSION_ARGON2ID) && (version <= CONTAINER_VERSION_CODEC)) {
+				if (version >= CONTAINER_VERSION_ALGORITHM) {
+					byte id = din.readByte();
+					algorithm = AeadAlgorithm.forId(id);
+					if (algorithm == null) {
+						throw new TombException("File " + location + " cipher unsupported (" + id + ").");
+					}
+				}
+				if (version >= CONTAINER_VERSION_LAYOUT) {
+					layout = din.readByte();
+					if ((layout != LAYOUT_SEGMENTED) && (layout != LAYOUT_CHUNKED_TABLE_FIRST)
+							&& (layout != LAYOUT_CHUNKED)) {
+						throw new TombException("File " + location + " layout unsupported (" + layout + ").");
+					}
+				}
+				if (version >= CONTAINER_VERSION_ENCODING) {
+					encoding = din.readByte();
+					if ((encoding != ENCODING_JSON) && (encoding != ENCODING_BINARY)) {
+						throw new TombException("File " + location + " encoding unsupported (" + encoding + ").");
+					}
+				}
+				if (version >= CONTAINER_VERSION_CODEC) {
+					byte id = din.readByte();
+					codec = PayloadCodec.forId(id);
+					if (codec == null) {
+						throw new TombException("File " + location + " compression unsupported (" + id + ").");
+					}
+				}
+
 				byte[] salt = new byte[SALT_SIZE];
 				din.readFully(salt);
 
 				int memory = din.readInt();
 				int iterations = din.readInt();
 				int parallelism = din.readInt();
-
-				key = computeArgon2(password, salt, memory, iterations, parallelism);
+				KdfParameters parameters = new KdfParameters(memory, iterations, parallelism);
+
+				key = computeArgon2(password, salt, parameters, algorithm);
+
+				if (version >= CONTAINER_VERSION_WRAPPED_KEY) {
+					try {
+						envelope = KeyEnvelope.read(din, algorithm, key, salt, parameters);
+					} catch (AEADBadTagException e) {
+						throw new TombException("Unable to unlock file " + location + " (incorrect password).");
+					}
+					key = envelope.getDataKey();
+				} else {
+					// Older files used the derived key directly. Wrap a fresh data key with it, so
+					// the next save can still skip Argon2.
+					SecureRandom random = new SecureRandom();
+					envelope = KeyEnvelope.wrap(algorithm, key, salt, parameters,
+							KeyEnvelope.generateDataKey(algorithm, random), random);
+				}
 
 			} else {
 				throw new TombException("File " + location + " version unsupported (" + version + ").");
 			}
 
-			KeyParameter keySpec = new KeyParameter(key);
+			AeadCipher cipher = CipherBackend.newDefaultCipher(algorithm, key);
+			RootEntry loaded;
+			byte[] noncePrefix = null;
+			if (version >= CONTAINER_VERSION_SEGMENTED) {
+				noncePrefix = new byte[SegmentedCipherOutputStream.NONCE_PREFIX_SIZE];
+				din.readFully(noncePrefix);
+
+				if (layout != LAYOUT_SEGMENTED) {
+					loaded = readChunkedPayload(contents, layout == LAYOUT_CHUNKED_TABLE_FIRST, algorithm, key,
+							noncePrefix, codec, encoding);
+				} else {
+					loaded = readSegmentedPayload(contents, cipher, noncePrefix, codec, encoding);
+				}
+			} else {
+				loaded = readPayload(contents, cipher);
+			}
 
-			byte[] iv = new byte[IV_SIZE];
-			din.readFully(iv);
+			// Only files with a wrapped key can have a journal, since the journal uses the data key
+			TombJournal loadedJournal = null;
+			if (version < CONTAINER_VERSION_WRAPPED_KEY) {
+				noncePrefix = null;
+			} else {
+				loadedJournal = TombJournal.open(location, algorithm, key, noncePrefix, loaded);
+			}
 
-			AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine());
-			cipher.init(false, new AEADParameters(keySpec, 128, iv));
+			root = loaded;
+			root.addEntryListener(changeListener);
+			this.password = password;
+			keyEnvelope = envelope;
+			opened(location, noncePrefix, loadedJournal);
+			synchronized (changes) {
+				changes.clear();
+			}
+		} catch (NoSuchFileException | InvalidPathException e) {
+			throw new TombException("File " + location + " not found.");
+		} catch (IOException | GeneralSecurityException e) {
+			throw new TombException("Error reading file " + location + " (" + e.getMessage() + ").");
+		}
+	}
 
-			byte[] compressedData = null;
-			try (CipherInputStream cipherStream = new CipherInputStream(din, cipher)) {
-				// Data must be fully decrypted before GCM auth check occurs D:
-				compressedData = IOUtils.toByteArray(cipherStream);
+	private static ByteBuffer readContents(String location) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File is too large");
 			}
 
-			try (ByteArrayInputStream bis = new ByteArrayInputStream(compressedData);
-					InflaterInputStream inflaterStream = new InflaterInputStream(bis)) {
+			if (MAP_FILES) {
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
 
-				root = new RootEntry(new JSONObject(new JSONTokener(inflaterStream)));
+			ByteBuffer contents = ByteBuffer.allocate((int) size);
+			while (contents.hasRemaining() && (channel.read(contents) != -1)) {
+				// Keep reading
 			}
-		} catch (FileNotFoundException e) {
-			throw new TombException("File " + location + " not found.");
-		} catch (IOException e) {
-			throw new TombException("Error reading file " + location + " (" + e.getMessage() + ").");
-		} finally {
-			// Encourage the JVM to release our Argon2 memory.
-			System.gc();
+			contents.flip();
+			return contents;
 		}
 	}
 
-	public Instant getUpdated() {
-		return getUpdated(root);
+	private static OutputStream pipelined(OutputStream out, String name) {
+		if (Runtime.getRuntime().availableProcessors() < 2) {
+			return out;
+		}
+		return new PipelineOutputStream(out, name);
 	}
 
-	private Instant getUpdated(Entry current) {
-		if (current instanceof FolderEntry) {
-			Instant newest = current.getUpdated();
-			for (Entry entry : (FolderEntry) current) {
-				Instant updated = getUpdated(entry);
-				if (updated.isAfter(newest)) {
-					newest = updated;
-				}
-			}
-			return newest;
+	private RootEntry readPayload(ByteBuffer contents, AeadCipher cipher)
+			throws IOException, GeneralSecurityException {
+		byte[] iv = new byte[IV_SIZE];
+		if (contents.remaining() < IV_SIZE + AeadAlgorithm.TAG_SIZE) {
+			throw new IOException("Encrypted data is truncated");
+		}
+		contents.get(iv);
+
+		// Data must be fully decrypted before GCM auth check occurs D:
+		byte[] compressedData = new byte[contents.remaining() - AeadAlgorithm.TAG_SIZE];
+		cipher.open(iv, contents, ByteBuffer.wrap(compressedData));
+
+		try (ByteArrayInputStream bis = new ByteArrayInputStream(compressedData);
+				InflaterInputStream inflaterStream = new InflaterInputStream(bis)) {
+
+			return JsonEntryCodec.read(inflaterStream);
 		}
-		return current.getUpdated();
 	}
 
-	private byte[] computeArgon2(String password, byte[] salt, int memory, int iterations, int parallelism) {
-		Argon2Parameters params = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
-				.withSalt(salt)
-				.withMemoryAsKB(memory)
-				.withIterations(iterations)
-				.withParallelism(parallelism)
-				.build();
+	private RootEntry readSegmentedPayload(ByteBuffer contents, AeadCipher cipher, byte[] noncePrefix,
+			PayloadCodec codec, byte encoding) throws IOException {
+		try (SegmentedCipherInputStream cipherStream = new SegmentedCipherInputStream(contents, cipher,
+				noncePrefix);
+				InputStream decompressed = codec.decompress(cipherStream)) {
+
+			// Each segment is authenticated as it arrives, so parsing can begin immediately
+			RootEntry loaded = parsePayload(decompressed, encoding);
 
-		Argon2BytesGenerator generator = new Argon2BytesGenerator();
-		generator.init(params);
+			// Reach the final segment so a truncated file is still detected
+			IOUtils.consume(cipherStream);
 
-		byte[] key = new byte[AES_KEY_SIZE];
-		generator.generateBytes(password.toCharArray(), key);
+			return loaded;
+		}
+	}
+
+	private RootEntry readChunkedPayload(ByteBuffer contents, boolean tableFirst, AeadAlgorithm algorithm,
+			byte[] key, byte[] noncePrefix, PayloadCodec codec, byte encoding) throws IOException {
+		try (ChunkedPayloadInputStream chunkStream = new ChunkedPayloadInputStream(contents, tableFirst, algorithm,
+				key, noncePrefix, codec)) {
+			return parsePayload(chunkStream, encoding);
+		}
+	}
+
+	private RootEntry parsePayload(InputStream in, byte encoding) throws IOException {
+		CountingInputStream counter = new CountingInputStream(in);
+
+		RootEntry loaded;
+		if (encoding == ENCODING_BINARY) {
+			loaded = BinaryEntryCodec.read(counter);
+		} else {
+			loaded = JsonEntryCodec.read(counter);
+		}
+
+		IOUtils.consume(counter);
+		payloadSize = counter.getByteCount();
+
+		return loaded;
+	}
+
+	public Instant getUpdated() {
+		return Instant.ofEpochMilli(root.getNewestUpdateMillis());
+	}
+
+	/**
+	 * Changes whenever the tree is modified.
+	 */
+	public long getGeneration() {
+		return root.getGeneration();
+	}
+
+	private boolean isCachedPassword(String password) {
+		if (this.password == null) {
+			return false;
+		}
+		return MessageDigest.isEqual(this.password.getBytes(StandardCharsets.UTF_8),
+				password.getBytes(StandardCharsets.UTF_8));
+	}
 
-		return key;
+	private byte[] computeArgon2(String password, byte[] salt, KdfParameters parameters, AeadAlgorithm algorithm) {
+		return Argon2.derive(password.getBytes(StandardCharsets.UTF_8), salt, parameters, algorithm.getKeySize());
 	}
 }
\ No newline at end of file
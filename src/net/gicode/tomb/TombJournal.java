@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.gicode.tomb.crypto.AeadAlgorithm;
+import net.gicode.tomb.crypto.RecordCipher;
+import net.gicode.tomb.crypto.SegmentedCipherOutputStream;
+import net.gicode.tomb.entry.EntryChange;
+import net.gicode.tomb.entry.RootEntry;
+import net.gicode.tomb.io.AtomicFileOutputStream;
+
+/**
+ * Changes saved since the tomb beside it was last written in full. Each save
+ * appends the edits as encrypted records instead of rewriting the tomb.
+ *
+ * The first record names the tomb the journal belongs to (by its payload nonce
+ * prefix), so a journal left behind by a later full save is ignored. The last
+ * record of each append is sealed as final, and its changes only apply once it
+ * is read. An append cut short by a crash ends in a partial record, so it is
+ * dropped and overwritten by the next append. A journal that ends cleanly
+ * partway through an append has had records removed, and fails to open.
+ */
+class TombJournal {
+	private static final byte[] MAGIC = { '.', 'T', 'O', 'M', 'B', 'J', (byte) 0x00 };
+	// Records don't mark where each append ends, so these are replayed but not added to
+	private static final byte VERSION_UNMARKED = 1;
+	private static final byte VERSION = 2;
+	private static final String SUFFIX = ".journal";
+
+	// Set in the length of the last record of each append
+	private static final int LAST_RECORD = 0x80000000;
+
+	private static final int HEADER_SIZE = MAGIC.length + 2 + SegmentedCipherOutputStream.NONCE_PREFIX_SIZE;
+
+	private final Path path;
+	private final RecordCipher cipher;
+	private final boolean marked;
+	private int counter;
+	private long size;
+
+	private TombJournal(Path path, RecordCipher cipher, boolean marked, int counter, long size) {
+		this.path = path;
+		this.cipher = cipher;
+		this.marked = marked;
+		this.counter = counter;
+		this.size = size;
+	}
+
+	public static Path pathFor(String location) {
+		return Paths.get(location + SUFFIX);
+	}
+
+	/**
+	 * Start an empty journal for the tomb identified by its payload nonce prefix,
+	 * replacing any existing one.
+	 */
+	public static TombJournal create(String location, AeadAlgorithm algorithm, byte[] key, byte[] tombNoncePrefix,
+			SecureRandom random) throws IOException, GeneralSecurityException {
+		Path path = pathFor(location);
+
+		byte[] noncePrefix = new byte[SegmentedCipherOutputStream.NONCE_PREFIX_SIZE];
+		random.nextBytes(noncePrefix);
+		RecordCipher cipher = new RecordCipher(algorithm, key, noncePrefix);
+		byte[] binding = cipher.seal(0, true, tombNoncePrefix);
+
+		AtomicFileOutputStream out = new AtomicFileOutputStream(path);
+		try {
+			try (DataOutputStream dout = new DataOutputStream(out)) {
+				dout.write(MAGIC);
+				dout.write(VERSION);
+				dout.write(algorithm.getId());
+				dout.write(noncePrefix);
+				dout.writeInt(binding.length | LAST_RECORD);
+				dout.write(binding);
+			}
+			out.commit();
+		} finally {
+			out.discard();
+		}
+
+		return new TombJournal(path, cipher, true, 1, HEADER_SIZE + 4 + binding.length);
+	}
+
+	/**
+	 * Replay the journal for the given tomb into its entries.
+	 *
+	 * @return The journal, or null if there is none for this tomb.
+	 */
+	public static TombJournal open(String location, AeadAlgorithm algorithm, byte[] key, byte[] tombNoncePrefix,
+			RootEntry root) throws IOException {
+		Path path = pathFor(location);
+
+		try (InputStream in = Files.newInputStream(path); DataInputStream din = new DataInputStream(in)) {
+			long fileSize = Files.size(path);
+			byte[] magic = new byte[MAGIC.length];
+			byte version;
+			byte algorithmId;
+			byte[] noncePrefix = new byte[SegmentedCipherOutputStream.NONCE_PREFIX_SIZE];
+			try {
+				din.readFully(magic);
+				version = din.readByte();
+				algorithmId = din.readByte();
+				din.readFully(noncePrefix);
+			} catch (EOFException e) {
+				// Never finished being created
+				return null;
+			}
+			boolean marked = (version == VERSION);
+			if (!Arrays.equals(MAGIC, magic) || (!marked && (version != VERSION_UNMARKED))
+					|| (algorithmId != algorithm.getId())) {
+				return null;
+			}
+
+			RecordCipher cipher = new RecordCipher(algorithm, key, noncePrefix);
+			long size = HEADER_SIZE;
+			int counter = 0;
+			// The records of the append being read, applied once its last record is
+			List<EntryChange> appended = new ArrayList<EntryChange>();
+			long appendedSize = size;
+			int appendedCounter = counter;
+
+			while (true) {
+				int length = readLength(din, marked, fileSize - appendedSize);
+				if (length == -1) {
+					break;
+				}
+				boolean last = !marked || ((length & LAST_RECORD) != 0);
+				byte[] sealed = new byte[length & ~LAST_RECORD];
+				din.readFully(sealed);
+
+				byte[] record;
+				try {
+					record = cipher.open(appendedCounter, marked && last, sealed);
+				} catch (GeneralSecurityException e) {
+					if (appendedCounter == 0) {
+						// Written with another key, so it belongs to some other tomb
+						return null;
+					}
+					throw new IOException("Journal record " + appendedCounter + " failed authentication", e);
+				}
+
+				if (appendedCounter == 0) {
+					if (!MessageDigest.isEqual(record, tombNoncePrefix)) {
+						return null;
+					}
+				} else {
+					try {
+						appended.add(EntryChange.fromJSON(new String(record, StandardCharsets.UTF_8)));
+					} catch (IllegalArgumentException e) {
+						throw new IOException(
+								"Journal record " + appendedCounter + " is invalid (" + e.getMessage() + ")", e);
+					}
+				}
+				appendedSize += 4 + sealed.length;
+				++appendedCounter;
+
+				if (last) {
+					for (EntryChange change : appended) {
+						try {
+							change.apply(root);
+						} catch (IllegalArgumentException e) {
+							throw new IOException("Journal change is invalid (" + e.getMessage() + ")", e);
+						}
+					}
+					appended.clear();
+					size = appendedSize;
+					counter = appendedCounter;
+				}
+			}
+
+			// A crash leaves part of a record behind, while removing records leaves none
+			if ((appendedCounter != counter) && (appendedSize == fileSize)) {
+				throw new IOException("Journal failed authentication (it ends partway through a save)");
+			}
+
+			return (counter == 0) ? null : new TombJournal(path, cipher, marked, counter, size);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Unable to initialize journal encryption (" + e.getMessage() + ")", e);
+		}
+	}
+
+	public static void delete(String location) throws IOException {
+		Files.deleteIfExists(pathFor(location));
+	}
+
+	/**
+	 * Reads a record's length, with LAST_RECORD set on the last record of an
+	 * append, or returns -1 if the record isn't all there.
+	 */
+	private static int readLength(DataInputStream din, boolean marked, long remaining) throws IOException {
+		try {
+			int length = din.readInt();
+			if ((!marked && (length < 0)) || ((length & ~LAST_RECORD) > remaining - 4)) {
+				// A partial record from an interrupted append
+				return -1;
+			}
+			return length;
+		} catch (EOFException e) {
+			// A partial record from an interrupted append
+			return -1;
+		}
+	}
+
+	public void append(List<EntryChange> changes) throws IOException {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(records);
+		int next = counter;
+		try {
+			for (EntryChange change : changes) {
+				boolean last = (next == counter + changes.size() - 1);
+				byte[] sealed = cipher.seal(next++, last, change.toJSON().getBytes(StandardCharsets.UTF_8));
+				dout.writeInt(last ? (sealed.length | LAST_RECORD) : sealed.length);
+				dout.write(sealed);
+			}
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Unable to encrypt journal record", e);
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			// Drop anything past the last complete record
+			channel.truncate(size);
+			ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+			long position = size;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			channel.force(false);
+		}
+
+		counter = next;
+		size += records.size();
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Whether saves can add to this journal. Older journals don't mark where each
+	 * append ends, so they are replaced by the next full save instead.
+	 */
+	public boolean canAppend() {
+		return marked;
+	}
+
+	/**
+	 * Whether the file still ends where this journal last wrote.
+	 */
+	public boolean isCurrent() {
+		try {
+			return Files.size(path) == size;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb;
+
+import java.util.prefs.Preferences;
+
+import net.gicode.tomb.crypto.AeadAlgorithm;
+import net.gicode.tomb.crypto.KdfParameters;
+import net.gicode.tomb.io.PayloadCodec;
+
+public class TombPreferences {
+	private Preferences preferences;
+
+	public TombPreferences() {
+		preferences = Preferences.userNodeForPackage(TombFile.class);
+	}
+
+	public KdfParameters readKdfParameters(KdfParameters defaults) {
+		int memory = preferences.getInt("ARGON2_MEMORY", defaults.getMemory());
+		int iterations = preferences.getInt("ARGON2_ITERATIONS", defaults.getIterations());
+		int parallelism = preferences.getInt("ARGON2_PARALLELISM", defaults.getParallelism());
+
+		return new KdfParameters(memory, iterations, parallelism);
+	}
+
+	public void storeKdfParameters(KdfParameters parameters) {
+		preferences.putInt("ARGON2_MEMORY", parameters.getMemory());
+		preferences.putInt("ARGON2_ITERATIONS", parameters.getIterations());
+		preferences.putInt("ARGON2_PARALLELISM", parameters.getParallelism());
+	}
+
+	/**
+	 * The configured cipher, or null to choose automatically.
+	 */
+	public AeadAlgorithm readCipher() {
+		return AeadAlgorithm.forName(preferences.get("CIPHER", "auto"));
+	}
+
+	public void storeCipher(AeadAlgorithm algorithm) {
+		if (algorithm == null) {
+			preferences.remove("CIPHER");
+		} else {
+			preferences.put("CIPHER", algorithm.getName());
+		}
+	}
+
+	/**
+	 * The configured compression, or null to choose automatically.
+	 */
+	public PayloadCodec readCompression() {
+		return PayloadCodec.forName(preferences.get("COMPRESSION", "auto"));
+	}
+
+	public void storeCompression(PayloadCodec codec) {
+		if (codec == null) {
+			preferences.remove("COMPRESSION");
+		} else {
+			preferences.put("COMPRESSION", codec.getName());
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+public enum AeadAlgorithm {
+	AES_GCM((byte) 1, "aes-gcm", "AES-GCM", 128 / 8),
+	CHACHA20_POLY1305((byte) 2, "chacha20-poly1305", "ChaCha20-Poly1305", 256 / 8);
+
+	public static final int NONCE_SIZE = 96 / 8;
+	public static final int TAG_SIZE = 128 / 8;
+
+	private static final int SELECTION_BENCHMARK_SIZE = 1024 * 1024;
+
+	private static AeadAlgorithm fastest = null;
+
+	private final byte id;
+	private final String name;
+	private final String displayName;
+	private final int keySize;
+
+	private AeadAlgorithm(byte id, String name, String displayName, int keySize) {
+		this.id = id;
+		this.name = name;
+		this.displayName = displayName;
+		this.keySize = keySize;
+	}
+
+	/**
+	 * Identifier stored in the container header.
+	 */
+	public byte getId() {
+		return id;
+	}
+
+	/**
+	 * Identifier used in settings.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public int getKeySize() {
+		return keySize;
+	}
+
+	@Override
+	public String toString() {
+		return displayName;
+	}
+
+	public static AeadAlgorithm forId(byte id) {
+		for (AeadAlgorithm algorithm : values()) {
+			if (algorithm.id == id) {
+				return algorithm;
+			}
+		}
+		return null;
+	}
+
+	public static AeadAlgorithm forName(String name) {
+		for (AeadAlgorithm algorithm : values()) {
+			if (algorithm.name.equals(name)) {
+				return algorithm;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The faster algorithm on this machine. AES-GCM wins wherever the JVM uses AES
+	 * instructions, otherwise ChaCha20-Poly1305 does. If the JVM doesn't say, a
+	 * short benchmark decides.
+	 */
+	public static synchronized AeadAlgorithm fastest() {
+		if (fastest == null) {
+			Boolean hardwareAES = detectHardwareAES();
+			if (hardwareAES != null) {
+				fastest = hardwareAES ? AES_GCM : CHACHA20_POLY1305;
+			} else {
+				fastest = benchmarkFastest();
+			}
+		}
+		return fastest;
+	}
+
+	private static Boolean detectHardwareAES() {
+		try {
+			HotSpotDiagnosticMXBean diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+			return Boolean.valueOf(diagnostics.getVMOption("UseAES").getValue());
+		} catch (RuntimeException | LinkageError e) {
+			// Not HotSpot, or the option doesn't exist on this platform
+			return null;
+		}
+	}
+
+	private static AeadAlgorithm benchmarkFastest() {
+		AeadAlgorithm best = AES_GCM;
+		double bestRate = 0;
+
+		for (AeadAlgorithm algorithm : values()) {
+			CipherBenchmark benchmark = new CipherBenchmark(CipherBackend.forAlgorithm(algorithm), algorithm);
+			try {
+				benchmark.run(SELECTION_BENCHMARK_SIZE);
+			} catch (IOException | GeneralSecurityException e) {
+				continue;
+			}
+
+			double rate = benchmark.getEncryptRate() + benchmark.getDecryptRate();
+			if (rate > bestRate) {
+				best = algorithm;
+				bestRate = rate;
+			}
+		}
+
+		return best;
+	}
+}
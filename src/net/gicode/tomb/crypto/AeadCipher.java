@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * An authenticated cipher bound to a single key. The output of seal is the
+ * ciphertext followed by a {@link AeadAlgorithm#TAG_SIZE} byte tag.
+ */
+public interface AeadCipher {
+	public int seal(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset)
+			throws GeneralSecurityException;
+
+	public int open(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset)
+			throws GeneralSecurityException;
+
+	/**
+	 * Open the remaining input, which may be a direct or mapped buffer, into the
+	 * output at its position. The output must be backed by an array. Both
+	 * positions are advanced.
+	 */
+	public default int open(byte[] nonce, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+		int inputLength = input.remaining();
+		byte[] inputArray;
+		int inputOffset;
+		if (input.hasArray()) {
+			inputArray = input.array();
+			inputOffset = input.arrayOffset() + input.position();
+		} else {
+			inputArray = new byte[inputLength];
+			input.duplicate().get(inputArray);
+			inputOffset = 0;
+		}
+
+		int length = open(nonce, inputArray, inputOffset, inputLength, output.array(),
+				output.arrayOffset() + output.position());
+		input.position(input.limit());
+		output.position(output.position() + length);
+		return length;
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+
+/**
+ * Argon2id (RFC 9106, version 0x13). Unlike the Bouncy Castle generator, the
+ * lanes of each slice are filled concurrently, one thread per lane up to the
+ * number of available processors.
+ */
+public class Argon2 {
+	private static final int BLOCK_SIZE = 1024;
+	private static final int QWORDS_IN_BLOCK = Argon2Arena.QWORDS_IN_BLOCK;
+	private static final int ADDRESSES_IN_BLOCK = 128;
+	private static final int SYNC_POINTS = 4;
+	private static final int VERSION = 0x13;
+	private static final int TYPE_ID = 2;
+
+	private final int iterations;
+	private final int parallelism;
+	private final int segmentLength;
+	private final int laneLength;
+	private final Argon2Arena memory;
+
+	private Argon2(KdfParameters parameters, Argon2Arena memory) {
+		iterations = parameters.getIterations();
+		parallelism = parameters.getParallelism();
+
+		int memoryBlocks = Math.max(parameters.getMemory(), 2 * SYNC_POINTS * parallelism);
+		segmentLength = memoryBlocks / (parallelism * SYNC_POINTS);
+		laneLength = segmentLength * SYNC_POINTS;
+		this.memory = memory;
+	}
+
+	private int block(int lane, int index) {
+		return lane * laneLength + index;
+	}
+
+	public static byte[] derive(byte[] password, byte[] salt, KdfParameters parameters, int outputLength) {
+		if ((parameters.getParallelism() < 1) || (parameters.getIterations() < 1)) {
+			throw new IllegalArgumentException("Invalid Argon2 parameters (" + parameters + ").");
+		}
+
+		Argon2Arena arena = Argon2Arena.getShared();
+		synchronized (arena) {
+			Argon2 instance = new Argon2(parameters, arena);
+			try {
+				arena.reserve(instance.laneLength * instance.parallelism);
+				instance.initialize(password, salt, parameters.getMemory(), outputLength);
+				instance.fillMemory();
+				return instance.finish(outputLength);
+			} finally {
+				arena.wipe();
+			}
+		}
+	}
+
+	private void initialize(byte[] password, byte[] salt, int memoryKB, int outputLength) {
+		Blake2bDigest digest = new Blake2bDigest(512);
+		updateInt(digest, parallelism);
+		updateInt(digest, outputLength);
+		updateInt(digest, memoryKB);
+		updateInt(digest, iterations);
+		updateInt(digest, VERSION);
+		updateInt(digest, TYPE_ID);
+		updateInt(digest, password.length);
+		digest.update(password, 0, password.length);
+		updateInt(digest, salt.length);
+		digest.update(salt, 0, salt.length);
+		updateInt(digest, 0); // Secret
+		updateInt(digest, 0); // Associated data
+
+		byte[] seed = new byte[64 + 8];
+		digest.doFinal(seed, 0);
+
+		byte[] block = new byte[BLOCK_SIZE];
+		long[] qwords = new long[QWORDS_IN_BLOCK];
+		for (int lane = 0; lane < parallelism; ++lane) {
+			for (int index = 0; index < 2; ++index) {
+				storeInt(seed, 64, index);
+				storeInt(seed, 68, lane);
+				hash(block, seed);
+				for (int c = 0; c < QWORDS_IN_BLOCK; ++c) {
+					qwords[c] = loadLong(block, c * 8);
+				}
+				memory.write(block(lane, index), qwords);
+			}
+		}
+	}
+
+	private void fillMemory() {
+		int threads = Math.min(parallelism, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+
+		try {
+			for (int pass = 0; pass < iterations; ++pass) {
+				for (int slice = 0; slice < SYNC_POINTS; ++slice) {
+					if (executor == null) {
+						for (int lane = 0; lane < parallelism; ++lane) {
+							fillSegment(pass, lane, slice);
+						}
+						continue;
+					}
+
+					// Lanes only reference each other's finished slices, so a slice can be filled
+					// in parallel across all lanes.
+					List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(parallelism);
+					for (int lane = 0; lane < parallelism; ++lane) {
+						final int currentPass = pass, currentLane = lane, currentSlice = slice;
+						tasks.add(() -> {
+							fillSegment(currentPass, currentLane, currentSlice);
+							return null;
+						});
+					}
+					for (Future<Void> result : executor.invokeAll(tasks)) {
+						result.get();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during Argon2.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error during Argon2.", e.getCause());
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	private void fillSegment(int pass, int lane, int slice) {
+		long[] previousBlock = new long[QWORDS_IN_BLOCK];
+		long[] referenceBlock = new long[QWORDS_IN_BLOCK];
+		long[] currentBlock = new long[QWORDS_IN_BLOCK];
+		long[] scratch = new long[QWORDS_IN_BLOCK];
+
+		boolean dataIndependent = (pass == 0) && (slice < SYNC_POINTS / 2);
+		long[] zero = null;
+		long[] input = null;
+		long[] addresses = null;
+		if (dataIndependent) {
+			zero = new long[QWORDS_IN_BLOCK];
+			input = new long[QWORDS_IN_BLOCK];
+			addresses = new long[QWORDS_IN_BLOCK];
+			input[0] = pass;
+			input[1] = lane;
+			input[2] = slice;
+			input[3] = laneLength * parallelism;
+			input[4] = iterations;
+			input[5] = TYPE_ID;
+		}
+
+		int start = 0;
+		if ((pass == 0) && (slice == 0)) {
+			// The first two blocks of each lane come from the seed
+			start = 2;
+			if (dataIndependent) {
+				nextAddresses(zero, input, addresses, scratch);
+			}
+		}
+
+		int current = slice * segmentLength + start;
+		int previous = (current == 0) ? laneLength - 1 : current - 1;
+
+		for (int index = start; index < segmentLength; ++index, ++current, ++previous) {
+			if (current == 1) {
+				previous = 0;
+			}
+
+			long pseudoRandom;
+			if (dataIndependent) {
+				if (index % ADDRESSES_IN_BLOCK == 0) {
+					nextAddresses(zero, input, addresses, scratch);
+				}
+				pseudoRandom = addresses[index % ADDRESSES_IN_BLOCK];
+			} else {
+				pseudoRandom = memory.first(block(lane, previous));
+			}
+
+			int referenceLane = (int) ((pseudoRandom >>> 32) % parallelism);
+			if ((pass == 0) && (slice == 0)) {
+				referenceLane = lane;
+			}
+			int referenceIndex = referenceIndex(pass, slice, index, pseudoRandom & 0xFFFFFFFFL,
+					referenceLane == lane);
+
+			memory.read(block(lane, previous), previousBlock);
+			memory.read(block(referenceLane, referenceIndex), referenceBlock);
+			if (pass != 0) {
+				memory.read(block(lane, current), currentBlock);
+			}
+			compress(previousBlock, referenceBlock, currentBlock, pass != 0, scratch);
+			memory.write(block(lane, current), currentBlock);
+		}
+	}
+
+	private int referenceIndex(int pass, int slice, int index, long pseudoRandom, boolean sameLane) {
+		long areaSize;
+		if (pass == 0) {
+			if (slice == 0) {
+				areaSize = index - 1;
+			} else if (sameLane) {
+				areaSize = (long) slice * segmentLength + index - 1;
+			} else {
+				areaSize = (long) slice * segmentLength + ((index == 0) ? -1 : 0);
+			}
+		} else if (sameLane) {
+			areaSize = laneLength - segmentLength + index - 1;
+		} else {
+			areaSize = laneLength - segmentLength + ((index == 0) ? -1 : 0);
+		}
+
+		long relative = (pseudoRandom * pseudoRandom) >>> 32;
+		relative = areaSize - 1 - ((areaSize * relative) >>> 32);
+
+		long start = 0;
+		if ((pass != 0) && (slice != SYNC_POINTS - 1)) {
+			start = (long) (slice + 1) * segmentLength;
+		}
+
+		return (int) ((start + relative) % laneLength);
+	}
+
+	private static void nextAddresses(long[] zero, long[] input, long[] addresses, long[] scratch) {
+		input[6] += 1;
+		compress(zero, input, addresses, false, scratch);
+		compress(zero, addresses, addresses, false, scratch);
+	}
+
+	private byte[] finish(int outputLength) {
+		long[] last = new long[QWORDS_IN_BLOCK];
+		long[] laneBlock = new long[QWORDS_IN_BLOCK];
+		for (int lane = 0; lane < parallelism; ++lane) {
+			memory.read(block(lane, laneLength - 1), laneBlock);
+			for (int c = 0; c < QWORDS_IN_BLOCK; ++c) {
+				last[c] ^= laneBlock[c];
+			}
+		}
+
+		byte[] block = new byte[BLOCK_SIZE];
+		for (int c = 0; c < QWORDS_IN_BLOCK; ++c) {
+			storeLong(block, c * 8, last[c]);
+		}
+
+		byte[] output = new byte[outputLength];
+		hash(output, block);
+		return output;
+	}
+
+	/**
+	 * The compression function G. With xor set, the result is combined with the
+	 * existing output block, as required for passes after the first.
+	 */
+	private static void compress(long[] x, long[] y, long[] out, boolean xor, long[] r) {
+		for (int c = 0; c < QWORDS_IN_BLOCK; ++c) {
+			r[c] = x[c] ^ y[c];
+			out[c] = xor ? r[c] ^ out[c] : r[c];
+		}
+
+		for (int row = 0; row < 8; ++row) {
+			int i = row * 16;
+			round(r, i, i + 1, i + 2, i + 3, i + 4, i + 5, i + 6, i + 7, i + 8, i + 9, i + 10, i + 11, i + 12, i + 13,
+					i + 14, i + 15);
+		}
+		for (int column = 0; column < 8; ++column) {
+			int i = column * 2;
+			round(r, i, i + 1, i + 16, i + 17, i + 32, i + 33, i + 48, i + 49, i + 64, i + 65, i + 80, i + 81, i + 96,
+					i + 97, i + 112, i + 113);
+		}
+
+		for (int c = 0; c < QWORDS_IN_BLOCK; ++c) {
+			out[c] ^= r[c];
+		}
+	}
+
+	private static void round(long[] v, int v0, int v1, int v2, int v3, int v4, int v5, int v6, int v7, int v8,
+			int v9, int v10, int v11, int v12, int v13, int v14, int v15) {
+		mix(v, v0, v4, v8, v12);
+		mix(v, v1, v5, v9, v13);
+		mix(v, v2, v6, v10, v14);
+		mix(v, v3, v7, v11, v15);
+		mix(v, v0, v5, v10, v15);
+		mix(v, v1, v6, v11, v12);
+		mix(v, v2, v7, v8, v13);
+		mix(v, v3, v4, v9, v14);
+	}
+
+	private static void mix(long[] v, int a, int b, int c, int d) {
+		v[a] = blaMka(v[a], v[b]);
+		v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+		v[c] = blaMka(v[c], v[d]);
+		v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+		v[a] = blaMka(v[a], v[b]);
+		v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+		v[c] = blaMka(v[c], v[d]);
+		v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+	}
+
+	private static long blaMka(long x, long y) {
+		return x + y + 2 * (x & 0xFFFFFFFFL) * (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * The variable length hash function H'.
+	 */
+	private static void hash(byte[] output, byte[] input) {
+		byte[] length = new byte[4];
+		storeInt(length, 0, output.length);
+
+		if (output.length <= 64) {
+			Blake2bDigest digest = new Blake2bDigest(output.length * 8);
+			digest.update(length, 0, length.length);
+			digest.update(input, 0, input.length);
+			digest.doFinal(output, 0);
+			return;
+		}
+
+		byte[] value = new byte[64];
+		Blake2bDigest digest = new Blake2bDigest(512);
+		digest.update(length, 0, length.length);
+		digest.update(input, 0, input.length);
+		digest.doFinal(value, 0);
+		System.arraycopy(value, 0, output, 0, 32);
+
+		int blocks = (output.length + 31) / 32 - 2;
+		int position = 32;
+		for (int c = 1; c < blocks; ++c, position += 32) {
+			digest.update(value, 0, value.length);
+			digest.doFinal(value, 0);
+			System.arraycopy(value, 0, output, position, 32);
+		}
+
+		Blake2bDigest lastDigest = new Blake2bDigest((output.length - position) * 8);
+		lastDigest.update(value, 0, value.length);
+		lastDigest.doFinal(output, position);
+	}
+
+	private static void updateInt(Blake2bDigest digest, int value) {
+		byte[] bytes = new byte[4];
+		storeInt(bytes, 0, value);
+		digest.update(bytes, 0, bytes.length);
+	}
+
+	private static void storeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) value;
+		bytes[offset + 1] = (byte) (value >>> 8);
+		bytes[offset + 2] = (byte) (value >>> 16);
+		bytes[offset + 3] = (byte) (value >>> 24);
+	}
+
+	private static void storeLong(byte[] bytes, int offset, long value) {
+		storeInt(bytes, offset, (int) value);
+		storeInt(bytes, offset + 4, (int) (value >>> 32));
+	}
+
+	private static long loadLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int c = 7; c >= 0; --c) {
+			value = (value << 8) | (bytes[offset + c] & 0xFF);
+		}
+		return value;
+	}
+}
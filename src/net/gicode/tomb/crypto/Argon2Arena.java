@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap block memory for Argon2, zeroed after each derivation and kept for
+ * the next one. It lives outside the Java heap, so the heap does not need to be
+ * sized for Argon2. Direct memory is limited by -XX:MaxDirectMemorySize instead,
+ * and a direct buffer's memory only returns once the buffer is collected, so
+ * reusing the buffers keeps derivations from depending on garbage collection.
+ */
+class Argon2Arena {
+	static final int QWORDS_IN_BLOCK = 1024 / 8;
+
+	// 8MB chunks, so the arena can grow without copying
+	private static final int CHUNK_SHIFT = 13;
+	private static final int CHUNK_BLOCKS = 1 << CHUNK_SHIFT;
+
+	private static final Argon2Arena SHARED = new Argon2Arena();
+
+	private final List<ByteBuffer> memory = new ArrayList<ByteBuffer>();
+	private final List<LongBuffer> chunks = new ArrayList<LongBuffer>();
+	private final byte[] zeros = new byte[64 * 1024];
+	private int used = 0;
+
+	static Argon2Arena getShared() {
+		return SHARED;
+	}
+
+	void reserve(int blocks) {
+		while (chunks.size() * CHUNK_BLOCKS < blocks) {
+			ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BLOCKS * QWORDS_IN_BLOCK * 8);
+			memory.add(chunk);
+			chunks.add(chunk.order(ByteOrder.nativeOrder()).asLongBuffer());
+		}
+		used = blocks;
+	}
+
+	long first(int block) {
+		return chunks.get(block >>> CHUNK_SHIFT).get((block & (CHUNK_BLOCKS - 1)) * QWORDS_IN_BLOCK);
+	}
+
+	void read(int block, long[] into) {
+		LongBuffer chunk = chunks.get(block >>> CHUNK_SHIFT);
+		int offset = (block & (CHUNK_BLOCKS - 1)) * QWORDS_IN_BLOCK;
+		for (int c = 0; c < QWORDS_IN_BLOCK; ++c) {
+			into[c] = chunk.get(offset + c);
+		}
+	}
+
+	void write(int block, long[] from) {
+		LongBuffer chunk = chunks.get(block >>> CHUNK_SHIFT);
+		int offset = (block & (CHUNK_BLOCKS - 1)) * QWORDS_IN_BLOCK;
+		for (int c = 0; c < QWORDS_IN_BLOCK; ++c) {
+			chunk.put(offset + c, from[c]);
+		}
+	}
+
+	/**
+	 * Zero every block used by the last derivation.
+	 */
+	void wipe() {
+		int chunkCount = (used + CHUNK_BLOCKS - 1) >>> CHUNK_SHIFT;
+		for (int c = 0; c < chunkCount; ++c) {
+			ByteBuffer chunk = memory.get(c);
+			chunk.clear();
+			while (chunk.hasRemaining()) {
+				chunk.put(zeros, 0, Math.min(zeros.length, chunk.remaining()));
+			}
+			chunk.clear();
+		}
+		used = 0;
+	}
+}
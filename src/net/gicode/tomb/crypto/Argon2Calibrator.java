@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Benchmarks Argon2 on this machine to choose parameters that unlock in roughly
+ * the target time, without going below the given minimum.
+ */
+public class Argon2Calibrator {
+	private static final int MAX_LANES = 16;
+	private static final int MAX_MEMORY = 1 << 22; // 4GB
+	private static final int OUTPUT_SIZE = 256 / 8;
+
+	private final KdfParameters minimum;
+	private long lastMillis = 0;
+
+	public Argon2Calibrator(KdfParameters minimum) {
+		this.minimum = minimum;
+	}
+
+	public KdfParameters calibrate(long targetMillis) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		int lanes = Math.max(minimum.getParallelism(), Math.min(cores, MAX_LANES));
+
+		// Spend the time budget on memory first, then on extra passes
+		int memory = minimum.getMemory();
+		long millis = measure(new KdfParameters(memory, 1, lanes));
+		while ((millis * 2 <= targetMillis) && (memory <= memoryLimit() / 2)) {
+			memory *= 2;
+			millis = measure(new KdfParameters(memory, 1, lanes));
+		}
+
+		int iterations = (int) Math.max(minimum.getIterations(), targetMillis / Math.max(millis, 1));
+
+		KdfParameters parameters = new KdfParameters(memory, iterations, lanes);
+		lastMillis = measure(parameters);
+		return parameters;
+	}
+
+	/**
+	 * Time taken by the final parameters chosen during calibration.
+	 */
+	public long getLastMillis() {
+		return lastMillis;
+	}
+
+	private long memoryLimit() {
+		// Leave room for the rest of the application's direct memory
+		long available = maxDirectMemory() / 2 / 1024;
+		return Math.min(available, MAX_MEMORY);
+	}
+
+	/**
+	 * The limit on direct memory, where Argon2 keeps its blocks. It is set with
+	 * -XX:MaxDirectMemorySize, and is the same as the heap's limit otherwise.
+	 */
+	private static long maxDirectMemory() {
+		try {
+			HotSpotDiagnosticMXBean diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+			if (diagnostics != null) {
+				long limit = Long.parseLong(diagnostics.getVMOption("MaxDirectMemorySize").getValue());
+				if (limit > 0) {
+					return limit;
+				}
+			}
+		} catch (RuntimeException e) {
+			// Not a HotSpot JVM, so assume its default
+		}
+		return Runtime.getRuntime().maxMemory();
+	}
+
+	private long measure(KdfParameters parameters) {
+		byte[] salt = new byte[16];
+		new SecureRandom().nextBytes(salt);
+
+		long start = System.nanoTime();
+		Argon2.derive("calibration".getBytes(StandardCharsets.UTF_8), salt, parameters, OUTPUT_SIZE);
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
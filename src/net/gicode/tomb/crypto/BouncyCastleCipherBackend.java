@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.AEADBadTagException;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.AEADCipher;
+import org.bouncycastle.crypto.modes.ChaCha20Poly1305;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * Bouncy Castle's pure Java ciphers. Slower than the JCA where the JVM has
+ * hardware intrinsics, but always available.
+ */
+public class BouncyCastleCipherBackend implements CipherBackend {
+
+	@Override
+	public String getName() {
+		return "Bouncy Castle";
+	}
+
+	@Override
+	public boolean supports(AeadAlgorithm algorithm) {
+		return true;
+	}
+
+	@Override
+	public AeadCipher newCipher(AeadAlgorithm algorithm, byte[] key) {
+		switch (algorithm) {
+		case AES_GCM:
+			return new BouncyCastleCipher(new GCMBlockCipher(new AESEngine()), new KeyParameter(key));
+		case CHACHA20_POLY1305:
+			return new BouncyCastleCipher(new ChaCha20Poly1305(), new KeyParameter(key));
+		default:
+			throw new IllegalArgumentException("Unknown algorithm " + algorithm + ".");
+		}
+	}
+
+	private static class BouncyCastleCipher implements AeadCipher {
+		private final AEADCipher cipher;
+		private final KeyParameter key;
+
+		private BouncyCastleCipher(AEADCipher cipher, KeyParameter key) {
+			this.cipher = cipher;
+			this.key = key;
+		}
+
+		@Override
+		public int seal(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output,
+				int outputOffset) throws GeneralSecurityException {
+			cipher.init(true, new AEADParameters(key, AeadAlgorithm.TAG_SIZE * 8, nonce));
+			return process(input, inputOffset, inputLength, output, outputOffset);
+		}
+
+		@Override
+		public int open(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output,
+				int outputOffset) throws GeneralSecurityException {
+			cipher.init(false, new AEADParameters(key, AeadAlgorithm.TAG_SIZE * 8, nonce));
+			return process(input, inputOffset, inputLength, output, outputOffset);
+		}
+
+		private int process(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset)
+				throws GeneralSecurityException {
+			int length = cipher.processBytes(input, inputOffset, inputLength, output, outputOffset);
+			try {
+				return length + cipher.doFinal(output, outputOffset + length);
+			} catch (InvalidCipherTextException e) {
+				throw new AEADBadTagException(e.getMessage());
+			}
+		}
+	}
+}
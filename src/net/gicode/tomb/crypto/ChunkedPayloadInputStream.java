@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.gicode.tomb.io.PayloadCodec;
+
+/**
+ * Reads a payload written by {@link ChunkedPayloadOutputStream} from a buffer,
+ * such as a mapped file. Chunks are decrypted in place and decompressed on a
+ * {@link ForkJoinPool} a few ahead of the reader. Older payloads have the chunk
+ * table first, as a count and then the lengths.
+ */
+public class ChunkedPayloadInputStream extends InputStream {
+	private static final int CHUNK_SIZE = ChunkedPayloadOutputStream.CHUNK_SIZE;
+	// Generous bound on a compressed chunk, to reject a corrupt table early
+	private static final int MAX_ENCRYPTED_CHUNK_SIZE = CHUNK_SIZE * 2;
+
+	private final AeadAlgorithm algorithm;
+	private final byte[] key;
+	private final byte[] noncePrefix;
+	private final PayloadCodec codec;
+
+	private final ForkJoinPool pool = ForkJoinPool.commonPool();
+	private final int window = pool.getParallelism() * 2;
+	private final List<ByteBuffer> encrypted;
+	private final List<ForkJoinTask<byte[]>> chunks = new ArrayList<>();
+
+	private byte[] plaintext = new byte[0];
+	private int position = 0;
+	private int current = 0;
+
+	public ChunkedPayloadInputStream(ByteBuffer in, boolean tableFirst, AeadAlgorithm algorithm, byte[] key,
+			byte[] noncePrefix, PayloadCodec codec) throws IOException {
+		this.algorithm = algorithm;
+		this.key = key.clone();
+		this.noncePrefix = noncePrefix.clone();
+		this.codec = codec;
+
+		try {
+			int[] lengths;
+			if (tableFirst) {
+				lengths = readLengths(in, in.getInt());
+			} else {
+				// The table ends the payload, so the chunks run up to it
+				if (in.remaining() < Integer.BYTES) {
+					throw new BufferUnderflowException();
+				}
+				int end = in.limit() - Integer.BYTES;
+				int count = in.getInt(end);
+				if ((count < 1) || (count > (end - in.position()) / Integer.BYTES)) {
+					throw new IOException("Invalid chunk count " + count);
+				}
+
+				int tableStart = end - count * Integer.BYTES;
+				ByteBuffer table = in.duplicate();
+				table.position(tableStart);
+				lengths = readLengths(table, count);
+
+				long total = 0;
+				for (int length : lengths) {
+					total += length;
+				}
+				if (total != tableStart - in.position()) {
+					throw new IOException("Chunk table doesn't match the chunks");
+				}
+			}
+
+			int count = lengths.length;
+			encrypted = new ArrayList<>(count);
+			for (int length : lengths) {
+				if (in.remaining() < length) {
+					throw new BufferUnderflowException();
+				}
+				ByteBuffer chunk = in.slice();
+				chunk.limit(length);
+				in.position(in.position() + length);
+				encrypted.add(chunk);
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Encrypted data is truncated", e);
+		}
+
+		while (chunks.size() < Math.min(window, encrypted.size())) {
+			submitChunk();
+		}
+	}
+
+	private static int[] readLengths(ByteBuffer in, int count) throws IOException {
+		if (count < 1) {
+			throw new IOException("Invalid chunk count " + count);
+		}
+
+		int[] lengths = new int[count];
+		for (int c = 0; c < count; ++c) {
+			lengths[c] = in.getInt();
+			if ((lengths[c] < AeadAlgorithm.TAG_SIZE) || (lengths[c] > MAX_ENCRYPTED_CHUNK_SIZE)) {
+				throw new IOException("Invalid length for chunk " + c);
+			}
+		}
+		return lengths;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		int count = read(single, 0, 1);
+		return count == -1 ? -1 : (single[0] & 0xFF);
+	}
+
+	@Override
+	public int read(byte[] data, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+
+		while (position == plaintext.length) {
+			if (current == encrypted.size()) {
+				return -1;
+			}
+			nextChunk();
+		}
+
+		int count = Math.min(length, plaintext.length - position);
+		System.arraycopy(plaintext, position, data, offset, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return plaintext.length - position;
+	}
+
+	private void nextChunk() throws IOException {
+		plaintext = ChunkedPayloadOutputStream.join(chunks.get(current));
+		chunks.set(current, null);
+		encrypted.set(current, null);
+		position = 0;
+		++current;
+
+		if (chunks.size() < encrypted.size()) {
+			submitChunk();
+		}
+	}
+
+	private void submitChunk() {
+		int index = chunks.size();
+		boolean last = index == encrypted.size() - 1;
+		ByteBuffer chunk = encrypted.get(index);
+
+		chunks.add(pool.submit(() -> openChunk(index, last, chunk)));
+	}
+
+	private byte[] openChunk(int index, boolean last, ByteBuffer chunk) throws IOException {
+		byte[] compressed = new byte[chunk.remaining() - AeadAlgorithm.TAG_SIZE];
+		try {
+			AeadCipher cipher = CipherBackend.newDefaultCipher(algorithm, key);
+			byte[] nonce = SegmentedCipherOutputStream.segmentNonce(noncePrefix, index, last);
+			cipher.open(nonce, chunk, ByteBuffer.wrap(compressed));
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Chunk " + index + " failed authentication", e);
+		}
+
+		Inflater inflater = codec.newInflater();
+		if (inflater == null) {
+			checkSize(index, last, compressed.length);
+			return compressed;
+		}
+
+		// Every chunk but the last is exactly full
+		byte[] inflated = new byte[CHUNK_SIZE];
+		try {
+			inflater.setInput(compressed);
+			int length = 0;
+			byte[] overflow = new byte[1];
+			while (!inflater.finished()) {
+				int count;
+				if (length < inflated.length) {
+					count = inflater.inflate(inflated, length, inflated.length - length);
+				} else if (inflater.inflate(overflow) > 0) {
+					throw new IOException("Chunk " + index + " is too large");
+				} else {
+					count = 0;
+				}
+				if ((count == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Chunk " + index + " is truncated");
+				}
+				length += count;
+			}
+			checkSize(index, last, length);
+			return (length == CHUNK_SIZE) ? inflated : Arrays.copyOf(inflated, length);
+		} catch (DataFormatException e) {
+			throw new IOException("Chunk " + index + " is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static void checkSize(int index, boolean last, int length) throws IOException {
+		if ((length > CHUNK_SIZE) || (!last && (length != CHUNK_SIZE))) {
+			throw new IOException("Chunk " + index + " has the wrong size");
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import net.gicode.tomb.io.PayloadCodec;
+
+/**
+ * Cuts a stream into chunks that are each compressed and encrypted independently,
+ * spread over a {@link ForkJoinPool}. Chunks are written in order as they finish,
+ * and close appends the chunk table: each encrypted length, then the count.
+ *
+ * Chunk nonces are built like {@link SegmentedCipherOutputStream} segment
+ * nonces, so dropped, reordered or truncated chunks fail authentication.
+ */
+public class ChunkedPayloadOutputStream extends OutputStream {
+	public static final int CHUNK_SIZE = 1024 * 1024;
+
+	private final DataOutputStream out;
+	private final AeadAlgorithm algorithm;
+	private final byte[] key;
+	private final byte[] noncePrefix;
+	private final PayloadCodec codec;
+	private final int level;
+
+	private final ForkJoinPool pool = ForkJoinPool.commonPool();
+	// Bounds the chunks submitted but not yet written. A finished task still holds
+	// its chunk until it is dropped.
+	private final int window = pool.getParallelism() * 2;
+	private final ArrayDeque<ForkJoinTask<byte[]>> chunks = new ArrayDeque<>();
+	private int[] lengths = new int[16];
+	private int written = 0;
+
+	private byte[] buffer = new byte[CHUNK_SIZE];
+	private int buffered = 0;
+	private int counter = 0;
+	private boolean closed = false;
+
+	public ChunkedPayloadOutputStream(DataOutputStream out, AeadAlgorithm algorithm, byte[] key,
+			byte[] noncePrefix, PayloadCodec codec, int level) {
+		this.out = out;
+		this.algorithm = algorithm;
+		this.key = key.clone();
+		this.noncePrefix = noncePrefix.clone();
+		this.codec = codec;
+		this.level = level;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+
+		while (length > 0) {
+			// As with segments, only submit a full chunk once more data arrives
+			if (buffered == CHUNK_SIZE) {
+				submitChunk(false);
+			}
+
+			int count = Math.min(length, CHUNK_SIZE - buffered);
+			System.arraycopy(data, offset, buffer, buffered, count);
+			buffered += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			submitChunk(true);
+			while (!chunks.isEmpty()) {
+				writeChunk();
+			}
+
+			for (int c = 0; c < written; ++c) {
+				out.writeInt(lengths[c]);
+			}
+			out.writeInt(written);
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void submitChunk(boolean last) throws IOException {
+		byte[] nonce = SegmentedCipherOutputStream.segmentNonce(noncePrefix, counter, last);
+		byte[] plaintext = buffer;
+		int length = buffered;
+
+		chunks.add(pool.submit(() -> sealChunk(nonce, plaintext, length)));
+		counter = SegmentedCipherOutputStream.nextCounter(counter);
+
+		if (chunks.size() > window) {
+			writeChunk();
+		}
+
+		buffer = last ? null : new byte[CHUNK_SIZE];
+		buffered = 0;
+	}
+
+	private void writeChunk() throws IOException {
+		byte[] encrypted = join(chunks.poll());
+		out.write(encrypted);
+
+		if (written == lengths.length) {
+			lengths = Arrays.copyOf(lengths, lengths.length * 2);
+		}
+		lengths[written++] = encrypted.length;
+	}
+
+	private byte[] sealChunk(byte[] nonce, byte[] plaintext, int length) throws IOException, GeneralSecurityException {
+		WipeableOutputStream compressed = new WipeableOutputStream(length / 2 + 64);
+		try {
+			try (OutputStream compressor = codec.compress(compressed, level)) {
+				compressor.write(plaintext, 0, length);
+			}
+
+			// Cipher instances aren't thread safe, so each chunk gets its own
+			AeadCipher cipher = CipherBackend.newDefaultCipher(algorithm, key);
+			byte[] encrypted = new byte[compressed.size() + AeadAlgorithm.TAG_SIZE];
+			cipher.seal(nonce, compressed.buffer(), 0, compressed.size(), encrypted, 0);
+			return encrypted;
+		} finally {
+			// The task keeps its arguments until it is dropped, which may be a while
+			Arrays.fill(plaintext, (byte) 0);
+			compressed.wipe();
+		}
+	}
+
+	private static class WipeableOutputStream extends ByteArrayOutputStream {
+		WipeableOutputStream(int size) {
+			super(size);
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+
+		void wipe() {
+			Arrays.fill(buf, (byte) 0);
+		}
+	}
+
+	static <T> T join(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			// Checked exceptions from a submitted Callable arrive wrapped, possibly twice
+			while ((cause instanceof RuntimeException) && (cause.getCause() != null)) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A source of {@link AeadCipher} implementations. Every backend produces the
+ * same bytes for the same algorithm, so they are interchangeable.
+ */
+public interface CipherBackend {
+	public String getName();
+
+	public boolean supports(AeadAlgorithm algorithm);
+
+	public AeadCipher newCipher(AeadAlgorithm algorithm, byte[] key) throws GeneralSecurityException;
+
+	/**
+	 * All backends, in order of preference.
+	 */
+	public static List<CipherBackend> getBackends() {
+		// The JCA provider uses the JVM's AES-NI and CLMUL intrinsics where available
+		return Arrays.asList(new JcaCipherBackend(), new BouncyCastleCipherBackend());
+	}
+
+	public static CipherBackend forAlgorithm(AeadAlgorithm algorithm) {
+		for (CipherBackend backend : getBackends()) {
+			if (backend.supports(algorithm)) {
+				return backend;
+			}
+		}
+		throw new IllegalStateException("No cipher backend supports " + algorithm + ".");
+	}
+
+	public static AeadCipher newDefaultCipher(AeadAlgorithm algorithm, byte[] key) throws GeneralSecurityException {
+		return forAlgorithm(algorithm).newCipher(algorithm, key);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+/**
+ * Measures segmented encryption and decryption throughput of a cipher backend.
+ */
+public class CipherBenchmark {
+	private static final int WARMUP_SIZE = 8 * 1024 * 1024;
+	private static final int WARMUP_ROUNDS = 10;
+
+	private final CipherBackend backend;
+	private final AeadAlgorithm algorithm;
+
+	private double encryptRate = 0;
+	private double decryptRate = 0;
+
+	public CipherBenchmark(CipherBackend backend, AeadAlgorithm algorithm) {
+		this.backend = backend;
+		this.algorithm = algorithm;
+	}
+
+	public void run(int size) throws IOException, GeneralSecurityException {
+		byte[] key = new byte[algorithm.getKeySize()];
+		byte[] noncePrefix = new byte[SegmentedCipherOutputStream.NONCE_PREFIX_SIZE];
+		AeadCipher cipher = backend.newCipher(algorithm, key);
+
+		byte[] data = new byte[size];
+		new Random(0).nextBytes(data);
+
+		// Give the JIT a chance to compile the intrinsics before measuring
+		for (int c = 0; c < WARMUP_ROUNDS; ++c) {
+			decrypt(cipher, noncePrefix, encrypt(cipher, noncePrefix, data, Math.min(size, WARMUP_SIZE)));
+		}
+
+		long start = System.nanoTime();
+		byte[] encrypted = encrypt(cipher, noncePrefix, data, data.length);
+		encryptRate = rate(size, System.nanoTime() - start);
+
+		start = System.nanoTime();
+		decrypt(cipher, noncePrefix, encrypted);
+		decryptRate = rate(size, System.nanoTime() - start);
+	}
+
+	/**
+	 * Megabytes per second.
+	 */
+	public double getEncryptRate() {
+		return encryptRate;
+	}
+
+	/**
+	 * Megabytes per second.
+	 */
+	public double getDecryptRate() {
+		return decryptRate;
+	}
+
+	private static byte[] encrypt(AeadCipher cipher, byte[] noncePrefix, byte[] data, int length)
+			throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream(length + length / 1024 + 64);
+		try (OutputStream out = new SegmentedCipherOutputStream(result, cipher, noncePrefix)) {
+			out.write(data, 0, length);
+		}
+		return result.toByteArray();
+	}
+
+	private static void decrypt(AeadCipher cipher, byte[] noncePrefix, byte[] encrypted) throws IOException {
+		byte[] buffer = new byte[SegmentedCipherOutputStream.SEGMENT_SIZE];
+		try (InputStream in = new SegmentedCipherInputStream(new ByteArrayInputStream(encrypted), cipher,
+				noncePrefix)) {
+			while (in.read(buffer) != -1) {
+				// Discard
+			}
+		}
+	}
+
+	private static double rate(int size, long nanos) {
+		return (size / (1024.0 * 1024.0)) / (nanos / 1e9);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+public class JcaCipherBackend implements CipherBackend {
+
+	@Override
+	public String getName() {
+		return "JCA";
+	}
+
+	@Override
+	public boolean supports(AeadAlgorithm algorithm) {
+		try {
+			Cipher.getInstance(transformation(algorithm));
+			return true;
+		} catch (GeneralSecurityException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public AeadCipher newCipher(AeadAlgorithm algorithm, byte[] key) throws GeneralSecurityException {
+		String keyAlgorithm = (algorithm == AeadAlgorithm.AES_GCM) ? "AES" : "ChaCha20";
+		return new JcaCipher(algorithm, Cipher.getInstance(transformation(algorithm)),
+				new SecretKeySpec(key, keyAlgorithm));
+	}
+
+	private static String transformation(AeadAlgorithm algorithm) {
+		switch (algorithm) {
+		case AES_GCM:
+			return "AES/GCM/NoPadding";
+		case CHACHA20_POLY1305:
+			// Java 11+
+			return "ChaCha20-Poly1305";
+		default:
+			throw new IllegalArgumentException("Unknown algorithm " + algorithm + ".");
+		}
+	}
+
+	private static class JcaCipher implements AeadCipher {
+		private final AeadAlgorithm algorithm;
+		private final Cipher cipher;
+		private final SecretKeySpec key;
+
+		private JcaCipher(AeadAlgorithm algorithm, Cipher cipher, SecretKeySpec key) {
+			this.algorithm = algorithm;
+			this.cipher = cipher;
+			this.key = key;
+		}
+
+		@Override
+		public int seal(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output,
+				int outputOffset) throws GeneralSecurityException {
+			cipher.init(Cipher.ENCRYPT_MODE, key, parameters(nonce));
+			return cipher.doFinal(input, inputOffset, inputLength, output, outputOffset);
+		}
+
+		@Override
+		public int open(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output,
+				int outputOffset) throws GeneralSecurityException {
+			cipher.init(Cipher.DECRYPT_MODE, key, parameters(nonce));
+			return cipher.doFinal(input, inputOffset, inputLength, output, outputOffset);
+		}
+
+		@Override
+		public int open(byte[] nonce, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+			cipher.init(Cipher.DECRYPT_MODE, key, parameters(nonce));
+			return cipher.doFinal(input, output);
+		}
+
+		private AlgorithmParameterSpec parameters(byte[] nonce) {
+			if (algorithm == AeadAlgorithm.AES_GCM) {
+				return new GCMParameterSpec(AeadAlgorithm.TAG_SIZE * 8, nonce);
+			}
+			return new IvParameterSpec(nonce);
+		}
+	}
+}
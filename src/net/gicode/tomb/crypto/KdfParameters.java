@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+public class KdfParameters {
+	private final int memory;
+	private final int iterations;
+	private final int parallelism;
+
+	/**
+	 * @param memory in kilobytes
+	 */
+	public KdfParameters(int memory, int iterations, int parallelism) {
+		this.memory = memory;
+		this.iterations = iterations;
+		this.parallelism = parallelism;
+	}
+
+	public int getMemory() {
+		return memory;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	@Override
+	public String toString() {
+		return memory + " KB, " + iterations + " iteration(s), " + parallelism + " lane(s)";
+	}
+}
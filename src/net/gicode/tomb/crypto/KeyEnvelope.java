@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * A random data key, wrapped by a key derived from the unlock password. The
+ * payload is always encrypted with the data key, so an unlocked tomb can be
+ * saved again without repeating the password derivation. The key is wrapped
+ * with the same algorithm it is used for.
+ */
+public class KeyEnvelope {
+	private final AeadAlgorithm algorithm;
+	private final byte[] salt;
+	private final KdfParameters parameters;
+
+	private final byte[] nonce;
+	private final byte[] wrappedKey;
+	private final byte[] dataKey;
+
+	private KeyEnvelope(AeadAlgorithm algorithm, byte[] salt, KdfParameters parameters, byte[] nonce,
+			byte[] wrappedKey, byte[] dataKey) {
+		this.algorithm = algorithm;
+		this.salt = salt;
+		this.parameters = parameters;
+		this.nonce = nonce;
+		this.wrappedKey = wrappedKey;
+		this.dataKey = dataKey;
+	}
+
+	public static byte[] generateDataKey(AeadAlgorithm algorithm, SecureRandom random) {
+		byte[] dataKey = new byte[algorithm.getKeySize()];
+		random.nextBytes(dataKey);
+		return dataKey;
+	}
+
+	public static KeyEnvelope wrap(AeadAlgorithm algorithm, byte[] wrappingKey, byte[] salt,
+			KdfParameters parameters, byte[] dataKey, SecureRandom random) throws GeneralSecurityException {
+		byte[] nonce = new byte[AeadAlgorithm.NONCE_SIZE];
+		random.nextBytes(nonce);
+
+		AeadCipher cipher = CipherBackend.newDefaultCipher(algorithm, wrappingKey);
+		byte[] wrappedKey = new byte[dataKey.length + AeadAlgorithm.TAG_SIZE];
+		cipher.seal(nonce, dataKey, 0, dataKey.length, wrappedKey, 0);
+
+		return new KeyEnvelope(algorithm, salt.clone(), parameters, nonce, wrappedKey, dataKey.clone());
+	}
+
+	/**
+	 * Read the wrapped key that follows the password derivation parameters.
+	 */
+	public static KeyEnvelope read(DataInputStream din, AeadAlgorithm algorithm, byte[] wrappingKey, byte[] salt,
+			KdfParameters parameters) throws IOException, GeneralSecurityException {
+		byte[] nonce = new byte[AeadAlgorithm.NONCE_SIZE];
+		din.readFully(nonce);
+		byte[] wrappedKey = new byte[algorithm.getKeySize() + AeadAlgorithm.TAG_SIZE];
+		din.readFully(wrappedKey);
+
+		AeadCipher cipher = CipherBackend.newDefaultCipher(algorithm, wrappingKey);
+		byte[] dataKey = new byte[algorithm.getKeySize()];
+		cipher.open(nonce, wrappedKey, 0, wrappedKey.length, dataKey, 0);
+
+		return new KeyEnvelope(algorithm, salt.clone(), parameters, nonce, wrappedKey, dataKey);
+	}
+
+	/**
+	 * Write the password derivation parameters and the wrapped key.
+	 */
+	public void write(DataOutputStream dout) throws IOException {
+		dout.write(salt);
+		dout.writeInt(parameters.getMemory());
+		dout.writeInt(parameters.getIterations());
+		dout.writeInt(parameters.getParallelism());
+		dout.write(nonce);
+		dout.write(wrappedKey);
+	}
+
+	public AeadAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	public byte[] getDataKey() {
+		return dataKey;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Seals numbered records for an append-only log. Nonces are built like segment
+ * nonces, so a record only opens at the position it was written to, and only
+ * with the final flag it was sealed with. Callers set the flag on whichever
+ * records end a group, so that a group missing its end can be told apart.
+ */
+public class RecordCipher {
+	private final AeadCipher cipher;
+	private final byte[] noncePrefix;
+
+	public RecordCipher(AeadAlgorithm algorithm, byte[] key, byte[] noncePrefix) throws GeneralSecurityException {
+		this.cipher = CipherBackend.newDefaultCipher(algorithm, key);
+		this.noncePrefix = noncePrefix.clone();
+	}
+
+	public byte[] seal(int counter, boolean last, byte[] record) throws GeneralSecurityException {
+		byte[] sealed = new byte[record.length + AeadAlgorithm.TAG_SIZE];
+		cipher.seal(SegmentedCipherOutputStream.segmentNonce(noncePrefix, counter, last), record, 0, record.length,
+				sealed, 0);
+		return sealed;
+	}
+
+	public byte[] open(int counter, boolean last, byte[] sealed) throws GeneralSecurityException {
+		if (sealed.length < AeadAlgorithm.TAG_SIZE) {
+			throw new GeneralSecurityException("Record is truncated");
+		}
+		byte[] record = new byte[sealed.length - AeadAlgorithm.TAG_SIZE];
+		cipher.open(SegmentedCipherOutputStream.segmentNonce(noncePrefix, counter, last), sealed, 0, sealed.length,
+				record, 0);
+		return record;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * Reads a stream written by {@link SegmentedCipherOutputStream}. Each segment is
+ * authenticated before any of its plaintext is returned, so callers can safely
+ * consume the data as it arrives.
+ */
+public class SegmentedCipherInputStream extends FilterInputStream {
+	private static final int SEGMENT_SIZE = SegmentedCipherOutputStream.SEGMENT_SIZE;
+	private static final int ENCRYPTED_SEGMENT_SIZE = SegmentedCipherOutputStream.ENCRYPTED_SEGMENT_SIZE;
+
+	private final AeadCipher cipher;
+	private final byte[] noncePrefix;
+
+	// Segments are opened in place when reading from a buffer
+	private final ByteBuffer source;
+
+	// One extra byte of read-ahead tells us whether the current segment is the last
+	private final byte[] ciphertext;
+	private final byte[] plaintext = new byte[SEGMENT_SIZE];
+	private int carried = 0;
+	private int position = 0;
+	private int available = 0;
+	private int counter = 0;
+	private boolean finished = false;
+
+	public SegmentedCipherInputStream(InputStream in, AeadCipher cipher, byte[] noncePrefix) {
+		super(in);
+		this.cipher = cipher;
+		this.noncePrefix = noncePrefix.clone();
+		source = null;
+		ciphertext = new byte[ENCRYPTED_SEGMENT_SIZE + 1];
+	}
+
+	/**
+	 * Read the remaining contents of a buffer, such as a mapped file.
+	 */
+	public SegmentedCipherInputStream(ByteBuffer encrypted, AeadCipher cipher, byte[] noncePrefix) {
+		super(null);
+		this.cipher = cipher;
+		this.noncePrefix = noncePrefix.clone();
+		source = encrypted.slice();
+		ciphertext = null;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		int count = read(single, 0, 1);
+		return count == -1 ? -1 : (single[0] & 0xFF);
+	}
+
+	@Override
+	public int read(byte[] data, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+
+		while (position == available) {
+			if (finished) {
+				return -1;
+			}
+			openSegment();
+		}
+
+		int count = Math.min(length, available - position);
+		System.arraycopy(plaintext, position, data, offset, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public long skip(long length) throws IOException {
+		byte[] discard = new byte[(int) Math.min(length, SEGMENT_SIZE)];
+		long skipped = 0;
+		while (skipped < length) {
+			int count = read(discard, 0, (int) Math.min(length - skipped, discard.length));
+			if (count == -1) {
+				break;
+			}
+			skipped += count;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return available - position;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+		}
+	}
+
+	private void openSegment() throws IOException {
+		if (source != null) {
+			openBufferedSegment();
+			return;
+		}
+
+		int length = carried;
+		while (length < ciphertext.length) {
+			int count = in.read(ciphertext, length, ciphertext.length - length);
+			if (count == -1) {
+				break;
+			}
+			length += count;
+		}
+
+		boolean last = length <= ENCRYPTED_SEGMENT_SIZE;
+		int segmentLength = last ? length : ENCRYPTED_SEGMENT_SIZE;
+		if (segmentLength < AeadAlgorithm.TAG_SIZE) {
+			throw new IOException("Encrypted data is truncated");
+		}
+
+		try {
+			byte[] nonce = SegmentedCipherOutputStream.segmentNonce(noncePrefix, counter, last);
+			available = cipher.open(nonce, ciphertext, 0, segmentLength, plaintext, 0);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Segment " + counter + " failed authentication", e);
+		}
+
+		position = 0;
+		finished = last;
+		counter = SegmentedCipherOutputStream.nextCounter(counter);
+
+		if (!last) {
+			ciphertext[0] = ciphertext[ENCRYPTED_SEGMENT_SIZE];
+			carried = 1;
+		}
+	}
+
+	private void openBufferedSegment() throws IOException {
+		boolean last = source.remaining() <= ENCRYPTED_SEGMENT_SIZE;
+		int segmentLength = last ? source.remaining() : ENCRYPTED_SEGMENT_SIZE;
+		if (segmentLength < AeadAlgorithm.TAG_SIZE) {
+			throw new IOException("Encrypted data is truncated");
+		}
+
+		ByteBuffer segment = source.duplicate();
+		segment.limit(segment.position() + segmentLength);
+		source.position(source.position() + segmentLength);
+
+		try {
+			byte[] nonce = SegmentedCipherOutputStream.segmentNonce(noncePrefix, counter, last);
+			available = cipher.open(nonce, segment, ByteBuffer.wrap(plaintext));
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Segment " + counter + " failed authentication", e);
+		}
+
+		position = 0;
+		finished = last;
+		counter = SegmentedCipherOutputStream.nextCounter(counter);
+	}
+}
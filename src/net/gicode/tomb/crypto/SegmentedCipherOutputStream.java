@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.crypto;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Encrypts a stream as a series of independently authenticated segments (the
+ * STREAM construction). Each segment holds {@link #SEGMENT_SIZE} bytes of
+ * plaintext, except the last, which may be shorter and is flagged in its nonce
+ * so truncation is detectable.
+ */
+public class SegmentedCipherOutputStream extends FilterOutputStream {
+	public static final int SEGMENT_SIZE = 64 * 1024;
+	public static final int NONCE_PREFIX_SIZE = AeadAlgorithm.NONCE_SIZE - 4 - 1;
+
+	static final int ENCRYPTED_SEGMENT_SIZE = SEGMENT_SIZE + AeadAlgorithm.TAG_SIZE;
+
+	private final AeadCipher cipher;
+	private final byte[] noncePrefix;
+
+	private final byte[] buffer = new byte[SEGMENT_SIZE];
+	private final byte[] ciphertext = new byte[ENCRYPTED_SEGMENT_SIZE];
+	private int buffered = 0;
+	private int counter = 0;
+	private boolean closed = false;
+
+	public SegmentedCipherOutputStream(OutputStream out, AeadCipher cipher, byte[] noncePrefix) {
+		super(out);
+		this.cipher = cipher;
+		this.noncePrefix = noncePrefix.clone();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException {
+		while (length > 0) {
+			// Only seal a full buffer once more data arrives, since the final segment must
+			// be flagged as such.
+			if (buffered == SEGMENT_SIZE) {
+				sealSegment(false);
+			}
+
+			int count = Math.min(length, SEGMENT_SIZE - buffered);
+			System.arraycopy(data, offset, buffer, buffered, count);
+			buffered += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			sealSegment(true);
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void sealSegment(boolean last) throws IOException {
+		try {
+			int length = cipher.seal(segmentNonce(noncePrefix, counter, last), buffer, 0, buffered, ciphertext, 0);
+			out.write(ciphertext, 0, length);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Unable to encrypt segment", e);
+		}
+
+		buffered = 0;
+		counter = nextCounter(counter);
+	}
+
+	static byte[] segmentNonce(byte[] prefix, int counter, boolean last) {
+		byte[] nonce = new byte[AeadAlgorithm.NONCE_SIZE];
+		System.arraycopy(prefix, 0, nonce, 0, NONCE_PREFIX_SIZE);
+		nonce[NONCE_PREFIX_SIZE] = (byte) (counter >>> 24);
+		nonce[NONCE_PREFIX_SIZE + 1] = (byte) (counter >>> 16);
+		nonce[NONCE_PREFIX_SIZE + 2] = (byte) (counter >>> 8);
+		nonce[NONCE_PREFIX_SIZE + 3] = (byte) counter;
+		nonce[AeadAlgorithm.NONCE_SIZE - 1] = (byte) (last ? 1 : 0);
+		return nonce;
+	}
+
+	static int nextCounter(int counter) throws IOException {
+		if (counter == -1) {
+			throw new IOException("Too many segments.");
+		}
+		return counter + 1;
+	}
+}
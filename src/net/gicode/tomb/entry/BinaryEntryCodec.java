@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A compact binary form of an entry tree. Each entry is a type byte followed by
+ * tagged fields and an end tag. Strings are length-prefixed UTF-8, numbers are
+ * varints, IDs are two fixed 8-byte halves, the update time is stored relative
+ * to the creation time, and a folder's children are a count followed by the
+ * entries themselves.
+ *
+ * Since version 3 the children are also preceded by their newest update time
+ * and their length in bytes. A folder keeps its children's bytes as they are
+ * until something looks inside it, and writes them back out unchanged if nothing
+ * did.
+ *
+ * Fields the entries don't know are kept as JSON text, so any tree that loads
+ * from JSON survives a round trip.
+ */
+public class BinaryEntryCodec {
+	private static final int VERSION_INITIAL = 1;
+	private static final int VERSION_ID = 2;
+	private static final int VERSION_CHILDREN_LENGTH = 3;
+	private static final int VERSION = VERSION_CHILDREN_LENGTH;
+
+	private static final int TYPE_ROOT = 1;
+	private static final int TYPE_FOLDER = 2;
+	private static final int TYPE_PASSWORD = 3;
+
+	private static final int TAG_END = 0;
+	private static final int TAG_NAME = 1;
+	private static final int TAG_DESCRIPTION = 2;
+	private static final int TAG_CREATED = 3;
+	private static final int TAG_UPDATED = 4;
+	private static final int TAG_USER = 5;
+	private static final int TAG_PASSWORD = 6;
+	private static final int TAG_USER_AGENT = 7;
+	private static final int TAG_ENTRIES = 8;
+	private static final int TAG_ID = 9;
+	private static final int TAG_OTHER = 15;
+
+	private static final String[] STRING_KEYS = { Entry.NAME_KEY, Entry.DESCRIPTION_KEY, PasswordEntry.USER_KEY,
+			PasswordEntry.PASSWORD_KEY, RootEntry.USER_AGENT_KEY };
+	private static final int[] STRING_TAGS = { TAG_NAME, TAG_DESCRIPTION, TAG_USER, TAG_PASSWORD, TAG_USER_AGENT };
+
+	private static final int BUFFER_SIZE = 8192;
+
+	public static void write(RootEntry root, OutputStream out) throws IOException {
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		writeVarint(dout, VERSION);
+		writeEntry(dout, root);
+		dout.flush();
+	}
+
+	public static void write(EntrySnapshot snapshot, OutputStream out) throws IOException {
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		writeVarint(dout, VERSION);
+		new SnapshotWriter(snapshot).writeEntry(dout, snapshot.getRoot());
+		dout.flush();
+	}
+
+	/**
+	 * Reads the whole stream, but leaves all but the top level of folders
+	 * unread until they are used.
+	 */
+	public static RootEntry read(InputStream in) throws IOException {
+		ByteArrayOutputStream contents = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int length;
+		while ((length = in.read(buffer)) != -1) {
+			contents.write(buffer, 0, length);
+		}
+		byte[] data = contents.toByteArray();
+
+		try {
+			Reader reader = new Reader(data, 0, data.length);
+			int version = (int) reader.readVarint();
+			if ((version < VERSION_INITIAL) || (version > VERSION)) {
+				throw new IOException("Unsupported binary payload version " + version);
+			}
+
+			Entry entry = reader.readEntry(version);
+			if (!(entry instanceof RootEntry)) {
+				throw new IOException("Binary payload does not start with the root");
+			}
+			return (RootEntry) entry;
+		} catch (EOFException e) {
+			throw new IOException("Binary payload is truncated", e);
+		} catch (JSONException | IllegalArgumentException e) {
+			throw new IOException("Invalid binary payload (" + e.getMessage() + ")", e);
+		}
+	}
+
+	private static void writeEntry(DataOutputStream dout, Entry entry) throws IOException {
+		writeFields(dout, entry);
+
+		// Children go last, so each entry's own fields stay together
+		if (entry instanceof FolderEntry) {
+			FolderEntry folder = (FolderEntry) entry;
+			writeEntriesHeader(dout, folder, folder.size());
+
+			PendingChildren pending = folder.getPendingChildren();
+			if (pending != null) {
+				writePending(dout, pending);
+			} else {
+				ByteArrayOutputStream children = new ByteArrayOutputStream();
+				DataOutputStream childrenOut = new DataOutputStream(children);
+				for (Entry child : folder) {
+					writeEntry(childrenOut, child);
+				}
+				writeVarint(dout, children.size());
+				children.writeTo(dout);
+			}
+		}
+
+		writeVarint(dout, TAG_END);
+	}
+
+	private static void writeFields(DataOutputStream dout, Entry entry) throws IOException {
+		if (entry instanceof RootEntry) {
+			dout.write(TYPE_ROOT);
+		} else if (entry instanceof FolderEntry) {
+			dout.write(TYPE_FOLDER);
+		} else {
+			dout.write(TYPE_PASSWORD);
+		}
+
+		UUID id = entry.getId();
+		writeVarint(dout, TAG_ID);
+		dout.writeLong(id.getMostSignificantBits());
+		dout.writeLong(id.getLeastSignificantBits());
+
+		writeStringField(dout, TAG_NAME, entry.getName());
+		writeStringField(dout, TAG_DESCRIPTION, entry.getDescription());
+
+		// Relative to creation, which keeps the number short
+		writeVarint(dout, TAG_CREATED);
+		writeVarint(dout, zigZag(entry.getCreatedMillis()));
+		writeVarint(dout, TAG_UPDATED);
+		writeVarint(dout, zigZag(entry.getUpdatedMillis() - entry.getCreatedMillis()));
+
+		if (entry instanceof PasswordEntry) {
+			PasswordEntry password = (PasswordEntry) entry;
+			writeStringField(dout, TAG_USER, password.getUsername());
+			writeStringField(dout, TAG_PASSWORD, password.getPassword());
+		} else if (entry instanceof RootEntry) {
+			writeStringField(dout, TAG_USER_AGENT, ((RootEntry) entry).getUserAgent());
+		}
+
+		for (Map.Entry<String, Object> field : entry.getOtherFields().entrySet()) {
+			writeVarint(dout, TAG_OTHER);
+			writeString(dout, field.getKey());
+			writeString(dout, JSONObject.valueToString(field.getValue()));
+		}
+	}
+
+	private static void writeEntriesHeader(DataOutputStream dout, FolderEntry folder, int count) throws IOException {
+		writeVarint(dout, TAG_ENTRIES);
+		writeVarint(dout, count);
+		writeVarint(dout, zigZag(folder.getNewestUpdateMillis()));
+	}
+
+	private static void writePending(DataOutputStream dout, PendingChildren pending) throws IOException {
+		writeVarint(dout, pending.end - pending.offset);
+		dout.write(pending.data, pending.offset, pending.end - pending.offset);
+	}
+
+	/**
+	 * Writes the entries of a snapshot. Each entry's fields are read while no
+	 * change can start, so they go to memory first instead of to a stream that
+	 * might block.
+	 */
+	private static class SnapshotWriter {
+		private final EntrySnapshot snapshot;
+		private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+		private final DataOutputStream fieldsOut = new DataOutputStream(fields);
+		// The children of the folder just read, whichever form they were in
+		private PendingChildren pending = null;
+		private Entry[] children = null;
+
+		SnapshotWriter(EntrySnapshot snapshot) {
+			this.snapshot = snapshot;
+		}
+
+		void writeEntry(DataOutputStream dout, Entry entry) throws IOException {
+			fields.reset();
+			snapshot.read(entry, this::readEntry);
+			PendingChildren unread = pending;
+			Entry[] read = children;
+			pending = null;
+			children = null;
+
+			fields.writeTo(dout);
+			if (unread != null) {
+				writePending(dout, unread);
+			} else if (read != null) {
+				ByteArrayOutputStream childrenBytes = new ByteArrayOutputStream();
+				DataOutputStream childrenOut = new DataOutputStream(childrenBytes);
+				for (Entry child : read) {
+					writeEntry(childrenOut, child);
+				}
+				writeVarint(dout, childrenBytes.size());
+				childrenBytes.writeTo(dout);
+			}
+			writeVarint(dout, TAG_END);
+		}
+
+		private void readEntry(Entry entry) throws IOException {
+			writeFields(fieldsOut, entry);
+			if (entry instanceof FolderEntry) {
+				FolderEntry folder = (FolderEntry) entry;
+				pending = folder.getPendingChildren();
+				children = (pending == null) ? folder.childArray() : null;
+				writeEntriesHeader(fieldsOut, folder, (pending != null) ? pending.getCount() : children.length);
+			}
+		}
+	}
+
+	private static void writeStringField(DataOutputStream dout, int tag, String value) throws IOException {
+		// A missing field reads back as empty
+		if (value != null) {
+			writeVarint(dout, tag);
+			writeString(dout, value);
+		}
+	}
+
+	private static String stringKey(int tag) {
+		for (int c = 0; c < STRING_TAGS.length; ++c) {
+			if (STRING_TAGS[c] == tag) {
+				return STRING_KEYS[c];
+			}
+		}
+		return null;
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarint(DataOutputStream dout, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			dout.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		dout.write((int) value);
+	}
+
+	private static void writeString(DataOutputStream dout, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(dout, bytes.length);
+		dout.write(bytes);
+	}
+
+	/**
+	 * A folder's children that haven't been read yet.
+	 */
+	static class PendingChildren {
+		private final byte[] data;
+		private final int offset;
+		private final int end;
+		private final int count;
+
+		PendingChildren(byte[] data, int offset, int end, int count) {
+			this.data = data;
+			this.offset = offset;
+			this.end = end;
+			this.count = count;
+		}
+
+		int getCount() {
+			return count;
+		}
+
+		void readInto(FolderEntry folder) {
+			// The payload was authenticated when it was opened, so a failure here means
+			// it was written wrong
+			try {
+				Reader reader = new Reader(data, offset, end);
+				reader.readChildren(folder, VERSION, count);
+				if (reader.position != end) {
+					throw new IOException("Children end early");
+				}
+			} catch (IOException | JSONException | IllegalArgumentException e) {
+				throw new IllegalStateException("Invalid binary payload (" + e.getMessage() + ")", e);
+			}
+		}
+	}
+
+	private static class Reader {
+		private final byte[] data;
+		private int position;
+		private final int limit;
+
+		Reader(byte[] data, int offset, int limit) {
+			this.data = data;
+			this.position = offset;
+			this.limit = limit;
+		}
+
+		Entry readEntry(int version) throws IOException {
+			Entry entry;
+
+			int type = readUnsignedByte();
+			switch (type) {
+			case TYPE_ROOT:
+				entry = Entry.create(RootEntry.ROOT_TYPE);
+				break;
+			case TYPE_FOLDER:
+				entry = Entry.create(FolderEntry.FOLDER_TYPE);
+				break;
+			case TYPE_PASSWORD:
+				entry = Entry.create(PasswordEntry.PASSWORD_TYPE);
+				break;
+			default:
+				throw new IOException("Unknown entry type " + type);
+			}
+
+			long updatedDelta = 0;
+			while (true) {
+				int tag = (int) readVarint();
+				if (tag == TAG_END) {
+					break;
+				}
+
+				switch (tag) {
+				case TAG_ID:
+					entry.readField(Entry.ID_KEY, new UUID(readLong(), readLong()));
+					break;
+				case TAG_CREATED:
+					entry.readField(Entry.CREATED_KEY, unZigZag(readVarint()));
+					break;
+				case TAG_UPDATED:
+					updatedDelta = unZigZag(readVarint());
+					break;
+				case TAG_ENTRIES:
+					if (!(entry instanceof FolderEntry)) {
+						throw new IOException("Only folders have entries");
+					}
+					readEntries((FolderEntry) entry, version);
+					break;
+				case TAG_OTHER:
+					String key = readString();
+					entry.readField(key, new JSONArray("[" + readString() + "]").get(0));
+					break;
+				default:
+					String stringKey = stringKey(tag);
+					if (stringKey == null) {
+						throw new IOException("Unknown field tag " + tag);
+					}
+					entry.readField(stringKey, readString());
+					break;
+				}
+			}
+
+			entry.readField(Entry.UPDATED_KEY, entry.getCreatedMillis() + updatedDelta);
+
+			return entry;
+		}
+
+		private void readEntries(FolderEntry folder, int version) throws IOException {
+			long count = readVarint();
+			if (count > Integer.MAX_VALUE) {
+				throw new IOException("Too many entries");
+			}
+			if (version < VERSION_CHILDREN_LENGTH) {
+				readChildren(folder, version, (int) count);
+				return;
+			}
+
+			long newest = unZigZag(readVarint());
+			long length = readVarint();
+			if (length > limit - position) {
+				throw new EOFException();
+			}
+			int end = position + (int) length;
+
+			if (folder instanceof RootEntry) {
+				// Every session shows the top level, so read it while the file is opened
+				Reader children = new Reader(data, position, end);
+				children.readChildren(folder, version, (int) count);
+				if (children.position != end) {
+					throw new IOException("Children end early");
+				}
+			} else {
+				folder.setPendingChildren(new PendingChildren(data, position, end, (int) count));
+				folder.childUpdated(newest);
+			}
+			position = end;
+		}
+
+		void readChildren(FolderEntry folder, int version, int count) throws IOException {
+			for (int c = 0; c < count; ++c) {
+				Entry child = readEntry(version);
+				if (child instanceof RootEntry) {
+					throw new IOException("Only the top level is a root");
+				}
+				folder.readChild(child);
+			}
+		}
+
+		private int readUnsignedByte() throws IOException {
+			if (position >= limit) {
+				throw new EOFException();
+			}
+			return data[position++] & 0xFF;
+		}
+
+		private long readLong() throws IOException {
+			long value = 0;
+			for (int c = 0; c < 8; ++c) {
+				value = (value << 8) | readUnsignedByte();
+			}
+			return value;
+		}
+
+		private long readVarint() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readUnsignedByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Varint is too long");
+		}
+
+		private void skip(long length) throws IOException {
+			if ((length < 0) || (length > limit - position)) {
+				throw new EOFException();
+			}
+			position += (int) length;
+		}
+
+		private String readString() throws IOException {
+			long length = readVarint();
+			skip(length);
+			return new String(data, position - (int) length, (int) length, StandardCharsets.UTF_8);
+		}
+	}
+}
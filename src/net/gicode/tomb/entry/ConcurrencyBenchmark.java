@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Has readers query a tree through RootEntry.read while one thread edits it and
+ * another saves snapshots of it, and counts how much each gets done. The tree
+ * starts out read from the binary encoding, so readers also race to read
+ * folders' children.
+ */
+public class ConcurrencyBenchmark {
+	private static final int ENTRIES_PER_FOLDER = 50;
+	private static final int SNAPSHOT_INTERVAL = 1000;
+
+	private int readers = 0;
+	private long reads = 0;
+	private long writes = 0;
+	private long saves = 0;
+	private double millis = 0;
+
+	/**
+	 * A reader's query of one folder, run under the read lock.
+	 */
+	interface FolderQuery {
+		void query(RootEntry root, FolderEntry folder);
+	}
+
+	/**
+	 * Throws IllegalStateException if a reader fails.
+	 */
+	public void run(int entries, int changes) throws IOException {
+		run(entries, changes, ConcurrencyBenchmark::lookUp);
+	}
+
+	/**
+	 * Runs with readers making the given query, which is also run over every
+	 * folder once the changes are done.
+	 */
+	void run(int entries, int changes, FolderQuery query) throws IOException {
+		RootEntry root = load(entries);
+		readers = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Reader> running = new ArrayList<Reader>();
+		ExecutorService saver = Executors.newSingleThreadExecutor();
+		List<Future<?>> saved = new ArrayList<Future<?>>();
+
+		long start = System.nanoTime();
+		for (int c = 0; c < readers; ++c) {
+			Reader reader = new Reader(root, query, c, failure);
+			running.add(reader);
+			reader.start();
+		}
+
+		Random random = new Random(0);
+		try {
+			for (int c = 0; (c < changes) && (failure.get() == null); ++c) {
+				change(root, random, c);
+				if (c % SNAPSHOT_INTERVAL == 0) {
+					EntrySnapshot snapshot = root.snapshot();
+					saved.add(saver.submit(() -> {
+						try (EntrySnapshot closing = snapshot) {
+							BinaryEntryCodec.write(closing, new ByteArrayOutputStream());
+						}
+						return null;
+					}));
+				}
+			}
+		} finally {
+			for (Reader reader : running) {
+				reader.finish();
+			}
+			saver.shutdown();
+		}
+
+		try {
+			for (Reader reader : running) {
+				reader.join();
+				reads += reader.reads;
+			}
+			for (Future<?> save : saved) {
+				save.get();
+			}
+			saver.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (Exception e) {
+			failure.compareAndSet(null, e);
+		}
+		millis = (System.nanoTime() - start) / 1e6;
+		writes = changes;
+		saves = saved.size();
+
+		if (failure.get() != null) {
+			throw new IllegalStateException(String.valueOf(failure.get().getMessage()), failure.get());
+		}
+		for (Entry folder : root) {
+			query.query(root, (FolderEntry) folder);
+		}
+	}
+
+	public int getReaders() {
+		return readers;
+	}
+
+	public long getReads() {
+		return reads;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	public long getSaves() {
+		return saves;
+	}
+
+	public double getMillis() {
+		return millis;
+	}
+
+	private static RootEntry load(int entries) throws IOException {
+		RootEntry root = new RootEntry();
+		FolderEntry folder = null;
+		for (int c = 0; c < entries; ++c) {
+			if (c % ENTRIES_PER_FOLDER == 0) {
+				folder = new FolderEntry("Folder " + (c / ENTRIES_PER_FOLDER), "Generated folder");
+				root.addEntry(folder);
+			}
+			folder.addEntry(new PasswordEntry("Site " + c, "", "user" + c, "password" + c));
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryEntryCodec.write(root, out);
+		return BinaryEntryCodec.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	/**
+	 * One change through the public methods, which take the write lock. Folders
+	 * stay at the top level so readers can always find them.
+	 */
+	private static void change(RootEntry root, Random random, int count) {
+		FolderEntry folder = (FolderEntry) root.get(random.nextInt(root.size()));
+		int size = folder.size();
+
+		switch (random.nextInt(5)) {
+		case 0:
+			folder.addEntry(new PasswordEntry("Added " + count, "", "", ""), random.nextInt(size + 1));
+			break;
+		case 1:
+			if (size > 0) {
+				folder.remove(random.nextInt(size));
+			}
+			break;
+		case 2:
+			if (size > 0) {
+				Entry moving = folder.get(random.nextInt(size));
+				FolderEntry destination = (FolderEntry) root.get(random.nextInt(root.size()));
+				folder.removeFirstEntry(moving);
+				destination.addEntry(moving, random.nextInt(destination.size() + 1));
+			}
+			break;
+		case 3:
+			if (size > 0) {
+				folder.get(random.nextInt(size)).setName("Renamed " + count);
+			}
+			break;
+		default:
+			if (size > 0) {
+				Entry entry = folder.get(random.nextInt(size));
+				if (entry instanceof PasswordEntry) {
+					((PasswordEntry) entry).setPassword("changed" + count);
+				}
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Finds each child of the folder the ways the GUI does.
+	 */
+	private static void lookUp(RootEntry root, FolderEntry folder) {
+		for (Entry child : folder) {
+			folder.indexOf(child);
+			root.findById(child.getId());
+			folder.findFirst(child.getName());
+		}
+	}
+
+	private static class Reader extends Thread {
+		private final RootEntry root;
+		private final FolderQuery query;
+		private final Random random;
+		private final AtomicReference<Throwable> failure;
+		private volatile boolean finished = false;
+		private long reads = 0;
+
+		Reader(RootEntry root, FolderQuery query, int seed, AtomicReference<Throwable> failure) {
+			super("Tomb reader " + seed);
+			this.root = root;
+			this.query = query;
+			this.random = new Random(seed + 1);
+			this.failure = failure;
+		}
+
+		void finish() {
+			finished = true;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!finished && (failure.get() == null)) {
+					root.read(() -> {
+						query.query(root, (FolderEntry) root.get(random.nextInt(root.size())));
+						return null;
+					});
+					++reads;
+				}
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}
+	}
+}
@@ -6,74 +6,352 @@
  */
 package net.gicode.tomb.entry;
 
+import java.security.MessageDigest;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-import org.json.JSONObject;
+public abstract class Entry implements Cloneable {
+	static final String TYPE_KEY = "type";
+	static final String ID_KEY = "id";
+	static final String NAME_KEY = "name";
+	static final String DESCRIPTION_KEY = "description";
+	static final String CREATED_KEY = "created_at";
+	static final String UPDATED_KEY = "updated_at";
 
-public abstract class Entry {
-	protected static final String TYPE_KEY = "type";
+	private static final AtomicReferenceFieldUpdater<Entry, UUID> ID_UPDATER = AtomicReferenceFieldUpdater
+			.newUpdater(Entry.class, UUID.class, "id");
 
-	private static final String NAME_KEY = "name";
-	private static final String DESCRIPTION_KEY = "description";
+	// Assigned on first use, so entries from older files get one when next saved
+	private volatile UUID id = null;
+	private String name = "";
+	private String description = "";
+	private long created = 0;
+	private long updated = 0;
 
-	private static final String CREATED_KEY = "created_at";
-	private static final String UPDATED_KEY = "updated_at";
+	// Fields this version doesn't know, as JSON values, so they survive a round trip
+	private Map<String, Object> otherFields = null;
 
-	protected JSONObject data;
+	FolderEntry parent = null;
+	// Position in the parent when last looked up, see FolderEntry.indexOf
+	int indexHint = 0;
+	// Cleared when this entry or anything below it changes, see EntryDigest
+	volatile byte[] digest = null;
 
 	protected Entry(String name, String description) {
-		data = new JSONObject();
-
-		data.put(TYPE_KEY, getType());
-		data.put(NAME_KEY, name);
-		data.put(DESCRIPTION_KEY, description);
+		this.name = name;
+		this.description = description;
 
 		long time = Instant.now().toEpochMilli();
-		data.put(CREATED_KEY, time);
-		data.put(UPDATED_KEY, time);
+		created = time;
+		updated = time;
 	}
 
-	protected Entry(JSONObject data) {
-		this.data = data;
+	/**
+	 * An entry for a reader to fill in with readField.
+	 */
+	Entry() {
 	}
 
 	abstract public String getType();
 
+	public UUID getId() {
+		// Snapshots and readers assign IDs from other threads, without locking so that
+		// they can't wait on whoever holds this entry
+		UUID current = id;
+		if (current == null) {
+			ID_UPDATER.compareAndSet(this, null, UUID.randomUUID());
+			current = id;
+		}
+		return current;
+	}
+
+	/**
+	 * Gives the entry a fresh ID without going through the root's index.
+	 */
+	void replaceId(boolean announce) {
+		EntrySnapshot.beforeChange(this);
+		UUID newId = UUID.randomUUID();
+		id = newId;
+		invalidateDigest();
+		if (announce) {
+			changed(ID_KEY, newId.toString());
+		}
+	}
+
+	void setId(UUID id) {
+		EntrySnapshot.beforeChange(this);
+		UUID oldId = ID_UPDATER.getAndSet(this, id);
+		invalidateDigest();
+
+		RootEntry root = getRoot();
+		if (root != null) {
+			root.idChanged(this, oldId);
+		}
+	}
+
 	public String getName() {
-		return data.getString(NAME_KEY);
+		return name;
 	}
 
 	public void setName(String name) {
-		touch();
-		data.put(NAME_KEY, name);
+		changeLocked(() -> {
+			touch();
+			rename(name);
+			changed(NAME_KEY, name);
+		});
+	}
+
+	private void rename(String name) {
+		String oldName = this.name;
+		this.name = name;
+		if (parent != null) {
+			parent.renamed(this, oldName);
+		}
 	}
 
 	public String getDescription() {
-		return data.getString(DESCRIPTION_KEY);
+		return description;
 	}
 
 	public void setDescription(String description) {
-		touch();
-		data.put(DESCRIPTION_KEY, description);
+		changeLocked(() -> {
+			touch();
+			this.description = description;
+			changed(DESCRIPTION_KEY, description);
+		});
 	}
 
 	public Instant getCreated() {
-		return Instant.ofEpochMilli(data.getLong(CREATED_KEY));
+		return Instant.ofEpochMilli(created);
 	}
 
 	public Instant getUpdated() {
-		return Instant.ofEpochMilli(data.getLong(UPDATED_KEY));
+		return Instant.ofEpochMilli(updated);
+	}
+
+	public long getCreatedMillis() {
+		return created;
+	}
+
+	public long getUpdatedMillis() {
+		return updated;
+	}
+
+	/**
+	 * The newest update time of this entry and anything below it.
+	 */
+	public long getNewestUpdateMillis() {
+		return updated;
+	}
+
+	public FolderEntry getParent() {
+		return parent;
+	}
+
+	/**
+	 * A SHA-256 digest of this entry and everything below it. Entries with equal
+	 * digests have equal fields, IDs and children.
+	 */
+	public byte[] getDigest() {
+		return EntryDigest.of(this).clone();
+	}
+
+	public boolean contentEquals(Entry other) {
+		return MessageDigest.isEqual(EntryDigest.of(this), EntryDigest.of(other));
+	}
+
+	/**
+	 * Called when anything the digest covers changes. Folders above an entry
+	 * without a digest never have one either, so this stops at the first.
+	 */
+	void invalidateDigest() {
+		for (Entry current = this; (current != null) && (current.digest != null); current = current.parent) {
+			current.digest = null;
+		}
 	}
 
 	@Override
 	public String toString() {
-		String[] entries = { "Name: " + getName(), "Description: " + getDescription(), "Type: " + getType(),
-				"Created: " + getCreated(), "Updated: " + getUpdated() };
+		String[] entries = { "ID: " + getId(), "Name: " + getName(), "Description: " + getDescription(),
+				"Type: " + getType(), "Created: " + getCreated(), "Updated: " + getUpdated() };
 		return String.join("\n", entries);
 	}
 
 	protected void touch() {
-		long time = Instant.now().toEpochMilli();
-		data.put(UPDATED_KEY, time);
+		EntrySnapshot.beforeChange(this);
+		invalidateDigest();
+		updated = Instant.now().toEpochMilli();
+		propagateUpdate(updated);
+	}
+
+	void setUpdated(long time) {
+		EntrySnapshot.beforeChange(this);
+		invalidateDigest();
+		updated = time;
+		propagateUpdate(time);
+	}
+
+	/**
+	 * Raises the newest update time of every folder above this entry and counts a
+	 * modification of the tree.
+	 */
+	void propagateUpdate(long time) {
+		Entry current = this;
+		for (FolderEntry folder = parent; folder != null; folder = folder.parent) {
+			folder.childUpdated(time);
+			current = folder;
+		}
+		if (current instanceof RootEntry) {
+			((RootEntry) current).modified();
+		}
+	}
+
+	/**
+	 * Sets a field read from storage or a journal, without touching the entry.
+	 * Values of the wrong type are converted, and unknown fields are kept aside.
+	 */
+	void readField(String key, Object value) {
+		EntrySnapshot.beforeChange(this);
+		invalidateDigest();
+		switch (key) {
+		case NAME_KEY:
+			rename(stringValue(value));
+			break;
+		case DESCRIPTION_KEY:
+			description = stringValue(value);
+			break;
+		case CREATED_KEY:
+			created = longValue(key, value);
+			break;
+		case UPDATED_KEY:
+			updated = longValue(key, value);
+			break;
+		case ID_KEY:
+			setId((value instanceof UUID) ? (UUID) value : UUID.fromString(stringValue(value)));
+			break;
+		case TYPE_KEY:
+			break;
+		default:
+			if (otherFields == null) {
+				otherFields = new LinkedHashMap<String, Object>();
+			}
+			otherFields.put(key, value);
+			break;
+		}
+	}
+
+	Map<String, Object> getOtherFields() {
+		return (otherFields == null) ? Collections.<String, Object>emptyMap() : otherFields;
+	}
+
+	static String stringValue(Object value) {
+		return (value instanceof String) ? (String) value : String.valueOf(value);
+	}
+
+	static long longValue(String key, Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		try {
+			return Long.parseLong(stringValue(value));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Field " + key + " is not a number.", e);
+		}
+	}
+
+	/**
+	 * A detached copy of this entry's own fields, for snapshots.
+	 */
+	Entry copy() {
+		Entry copy;
+		try {
+			copy = (Entry) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+		copy.id = getId();
+		copy.parent = null;
+		// A folder's children are copied separately, and may have changed since
+		copy.digest = null;
+		if (otherFields != null) {
+			copy.otherFields = new LinkedHashMap<String, Object>(otherFields);
+		}
+		return copy;
+	}
+
+	/**
+	 * A blank entry of the given type, for a reader to fill in.
+	 */
+	static Entry create(String type) {
+		switch (type) {
+		case RootEntry.ROOT_TYPE:
+			return new RootEntry();
+		case FolderEntry.FOLDER_TYPE:
+			return new FolderEntry();
+		case PasswordEntry.PASSWORD_TYPE:
+			return new PasswordEntry();
+		default:
+			throw new IllegalArgumentException("Unknown entry type " + type + ".");
+		}
+	}
+
+	/**
+	 * Runs a change under the write lock of the tree holding this entry. The lock
+	 * isn't reentrant, so nothing called from a change may take it again.
+	 */
+	void changeLocked(Runnable change) {
+		while (true) {
+			RootEntry root = getRoot();
+			if (root == null) {
+				change.run();
+				return;
+			}
+
+			long stamp = root.lockWrite();
+			try {
+				// Another change may have moved the entry while this one waited
+				if (getRoot() == root) {
+					change.run();
+					return;
+				}
+			} finally {
+				root.unlockWrite(stamp);
+			}
+		}
+	}
+
+	void changed(String key, String value) {
+		RootEntry root = getRoot();
+		if ((root != null) && root.hasListeners()) {
+			root.fireChange(EntryChange.set(getPath(), key, value, getUpdatedMillis()));
+		}
+	}
+
+	RootEntry getRoot() {
+		Entry current = this;
+		while (current.parent != null) {
+			current = current.parent;
+		}
+		return (current instanceof RootEntry) ? (RootEntry) current : null;
+	}
+
+	/**
+	 * Child indexes leading from the root to this entry.
+	 */
+	int[] getPath() {
+		int depth = 0;
+		for (Entry current = this; current.parent != null; current = current.parent) {
+			++depth;
+		}
+
+		int[] path = new int[depth];
+		for (Entry current = this; current.parent != null; current = current.parent) {
+			path[--depth] = current.parent.indexOf(current);
+		}
+		return path;
 	}
 }
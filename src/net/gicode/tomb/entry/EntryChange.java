@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A single change to an entry tree, addressed by the child indexes leading from
+ * the root to the changed entry. Applying the changes in order to a copy of the
+ * original tree reproduces the edited tree exactly, including timestamps.
+ */
+public class EntryChange {
+	public enum Type {
+		SET, ADD, REMOVE
+	}
+
+	private static final String TYPE_KEY = "op";
+	private static final String PATH_KEY = "path";
+	private static final String FIELD_KEY = "field";
+	private static final String VALUE_KEY = "value";
+	private static final String INDEX_KEY = "index";
+	private static final String ENTRY_KEY = "entry";
+	private static final String UPDATED_KEY = "updated";
+
+	private final Type type;
+	private final int[] path;
+	private final String field;
+	private final String value;
+	private final int index;
+	private final String entry;
+	private final long updated;
+
+	private EntryChange(Type type, int[] path, String field, String value, int index, String entry, long updated) {
+		this.type = type;
+		this.path = path;
+		this.field = field;
+		this.value = value;
+		this.index = index;
+		this.entry = entry;
+		this.updated = updated;
+	}
+
+	static EntryChange set(int[] path, String field, String value, long updated) {
+		return new EntryChange(Type.SET, path, field, value, -1, null, updated);
+	}
+
+	static EntryChange add(int[] folderPath, int index, Entry entry, long updated) {
+		// Later edits to the entry are changes of their own, so copy it as it is now
+		return new EntryChange(Type.ADD, folderPath, null, null, index, JsonEntryCodec.toJSON(entry), updated);
+	}
+
+	static EntryChange remove(int[] folderPath, int index, long updated) {
+		return new EntryChange(Type.REMOVE, folderPath, null, null, index, null, updated);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public void apply(RootEntry root) {
+		root.changeLocked(() -> applyLocked(root));
+	}
+
+	private void applyLocked(RootEntry root) {
+		Entry target = root;
+		for (int index : path) {
+			if (!(target instanceof FolderEntry) || (index < 0) || (index >= ((FolderEntry) target).size())) {
+				throw new IllegalArgumentException("Change refers to a missing entry.");
+			}
+			target = ((FolderEntry) target).get(index);
+		}
+
+		switch (type) {
+		case SET:
+			target.readField(field, value);
+			target.setUpdated(updated);
+			break;
+		case ADD:
+			folder(target).insertEntry(JsonEntryCodec.fromJSON(entry), index, updated);
+			break;
+		case REMOVE:
+			folder(target).removeEntry(index, updated);
+			break;
+		}
+	}
+
+	private FolderEntry folder(Entry target) {
+		if (!(target instanceof FolderEntry) || (index < 0) || (index > ((FolderEntry) target).size())
+				|| ((type == Type.REMOVE) && (index == ((FolderEntry) target).size()))) {
+			throw new IllegalArgumentException("Change refers to a missing entry.");
+		}
+		return (FolderEntry) target;
+	}
+
+	public String toJSON() {
+		JSONObject json = new JSONObject();
+		json.put(TYPE_KEY, type.name().toLowerCase());
+		json.put(PATH_KEY, new JSONArray(path));
+		json.put(UPDATED_KEY, updated);
+
+		switch (type) {
+		case SET:
+			json.put(FIELD_KEY, field);
+			json.put(VALUE_KEY, value);
+			break;
+		case ADD:
+			json.put(INDEX_KEY, index);
+			json.put(ENTRY_KEY, new JSONObject(entry));
+			break;
+		case REMOVE:
+			json.put(INDEX_KEY, index);
+			break;
+		}
+
+		return json.toString();
+	}
+
+	public static EntryChange fromJSON(String text) {
+		try {
+			JSONObject json = new JSONObject(text);
+			Type type = Type.valueOf(json.getString(TYPE_KEY).toUpperCase());
+
+			JSONArray rawPath = json.getJSONArray(PATH_KEY);
+			int[] path = new int[rawPath.length()];
+			for (int c = 0; c < path.length; ++c) {
+				path[c] = rawPath.getInt(c);
+			}
+			long updated = json.getLong(UPDATED_KEY);
+
+			switch (type) {
+			case SET:
+				return set(path, json.getString(FIELD_KEY), json.getString(VALUE_KEY), updated);
+			case ADD:
+				return new EntryChange(Type.ADD, path, null, null, json.getInt(INDEX_KEY),
+						json.getJSONObject(ENTRY_KEY).toString(), updated);
+			default:
+				return remove(path, json.getInt(INDEX_KEY), updated);
+			}
+		} catch (JSONException e) {
+			throw new IllegalArgumentException("Invalid change (" + e.getMessage() + ").", e);
+		}
+	}
+}
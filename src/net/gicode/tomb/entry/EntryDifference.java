@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * One way two trees differ, with entries matched by ID. Comparing trees skips
+ * every subtree whose digest is the same on both sides, so the cost depends on
+ * how much changed rather than on the size of the trees.
+ */
+public class EntryDifference {
+	public enum Type {
+		ADDED, REMOVED, CHANGED, MOVED
+	}
+
+	private final Type type;
+	private final Entry before;
+	private final Entry after;
+
+	private EntryDifference(Type type, Entry before, Entry after) {
+		this.type = type;
+		this.before = before;
+		this.after = after;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * The entry in the first tree, or null if it was added.
+	 */
+	public Entry getBefore() {
+		return before;
+	}
+
+	/**
+	 * The entry in the second tree, or null if it was removed.
+	 */
+	public Entry getAfter() {
+		return after;
+	}
+
+	/**
+	 * The differences between two trees, ordered by where they are found. CHANGED
+	 * means the entry's own fields differ. MOVED means it is in another folder or
+	 * out of order with its neighbors, and may be reported along with CHANGED.
+	 */
+	public static List<EntryDifference> compare(RootEntry before, RootEntry after) {
+		Comparison comparison = new Comparison();
+		comparison.compare(before, after);
+		comparison.matchMoves();
+		return comparison.differences;
+	}
+
+	private static class Comparison {
+		private final List<EntryDifference> differences = new ArrayList<EntryDifference>();
+		// Entries missing from their folder on one side, which may turn up elsewhere
+		private final Map<UUID, Entry> removed = new LinkedHashMap<UUID, Entry>();
+		private final Map<UUID, Entry> added = new LinkedHashMap<UUID, Entry>();
+
+		void compare(Entry before, Entry after) {
+			if (MessageDigest.isEqual(EntryDigest.of(before), EntryDigest.of(after))) {
+				return;
+			}
+
+			if (!MessageDigest.isEqual(EntryDigest.ofFields(before), EntryDigest.ofFields(after))) {
+				differences.add(new EntryDifference(Type.CHANGED, before, after));
+			}
+			if ((before instanceof FolderEntry) && (after instanceof FolderEntry)) {
+				compareChildren((FolderEntry) before, (FolderEntry) after);
+			}
+		}
+
+		private void compareChildren(FolderEntry before, FolderEntry after) {
+			Map<UUID, Integer> afterIndexes = new HashMap<UUID, Integer>();
+			for (int c = 0; c < after.size(); ++c) {
+				afterIndexes.put(after.get(c).getId(), c);
+			}
+
+			// Children on both sides, by their position after
+			List<Entry> kept = new ArrayList<Entry>();
+			List<Integer> keptIndexes = new ArrayList<Integer>();
+			for (Entry child : before) {
+				Integer index = afterIndexes.remove(child.getId());
+				if (index == null) {
+					removed.put(child.getId(), child);
+				} else {
+					kept.add(child);
+					keptIndexes.add(index);
+				}
+			}
+			for (int c = 0; c < after.size(); ++c) {
+				Entry child = after.get(c);
+				if (afterIndexes.containsKey(child.getId())) {
+					added.put(child.getId(), child);
+				}
+			}
+
+			boolean[] inOrder = longestIncreasing(keptIndexes);
+			for (int c = 0; c < kept.size(); ++c) {
+				Entry child = after.get(keptIndexes.get(c));
+				if (!inOrder[c]) {
+					differences.add(new EntryDifference(Type.MOVED, kept.get(c), child));
+				}
+				compare(kept.get(c), child);
+			}
+		}
+
+		void matchMoves() {
+			Set<Entry> expanded = new HashSet<Entry>();
+			boolean found = true;
+			while (found) {
+				found = false;
+				// Comparing a moved folder can find more moves, into or out of it
+				for (UUID id : new ArrayList<UUID>(removed.keySet())) {
+					if (removed.containsKey(id) && added.containsKey(id)) {
+						Entry before = removed.remove(id);
+						Entry after = added.remove(id);
+						// Comparing the two finds what really left or joined the folder
+						forget(removed, expanded, before);
+						forget(added, expanded, after);
+
+						differences.add(new EntryDifference(Type.MOVED, before, after));
+						compare(before, after);
+						found = true;
+					}
+				}
+
+				// So can the children of a removed or added folder, one level at a time
+				if (!found) {
+					found = expand(removed, expanded) | expand(added, expanded);
+				}
+			}
+
+			// Only the topmost of each removed or added subtree is reported
+			for (Entry before : removed.values()) {
+				if (removed.get(before.getParent().getId()) != before.getParent()) {
+					differences.add(new EntryDifference(Type.REMOVED, before, null));
+				}
+			}
+			for (Entry after : added.values()) {
+				if (added.get(after.getParent().getId()) != after.getParent()) {
+					differences.add(new EntryDifference(Type.ADDED, null, after));
+				}
+			}
+		}
+
+		private static boolean expand(Map<UUID, Entry> unmatched, Set<Entry> expanded) {
+			boolean found = false;
+			for (Entry entry : new ArrayList<Entry>(unmatched.values())) {
+				if ((entry instanceof FolderEntry) && expanded.add(entry)) {
+					for (Entry child : (FolderEntry) entry) {
+						unmatched.put(child.getId(), child);
+						found = true;
+					}
+				}
+			}
+			return found;
+		}
+
+		private static void forget(Map<UUID, Entry> unmatched, Set<Entry> expanded, Entry entry) {
+			if (!expanded.remove(entry)) {
+				return;
+			}
+			for (Entry child : (FolderEntry) entry) {
+				unmatched.remove(child.getId(), child);
+				forget(unmatched, expanded, child);
+			}
+		}
+	}
+
+	/**
+	 * Marks the longest increasing run of values, not necessarily adjacent. The
+	 * rest are the fewest children that have to move to give the new order.
+	 */
+	private static boolean[] longestIncreasing(List<Integer> values) {
+		int count = values.size();
+		// Index of the smallest last value of an increasing run of each length
+		int[] tails = new int[count];
+		int[] previous = new int[count];
+		int length = 0;
+		for (int c = 0; c < count; ++c) {
+			int value = values.get(c);
+			int low = 0;
+			int high = length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (values.get(tails[middle]) < value) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			previous[c] = (low > 0) ? tails[low - 1] : -1;
+			tails[low] = c;
+			if (low == length) {
+				++length;
+			}
+		}
+
+		boolean[] marked = new boolean[count];
+		for (int c = (length > 0) ? tails[length - 1] : -1; c >= 0; c = previous[c]) {
+			marked[c] = true;
+		}
+		return marked;
+	}
+
+	@Override
+	public String toString() {
+		Entry entry = (after != null) ? after : before;
+		return type.name().toLowerCase() + " " + entry.getId() + " " + entry.getName();
+	}
+}
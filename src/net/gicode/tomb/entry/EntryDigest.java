@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.UUID;
+
+import org.json.JSONObject;
+
+/**
+ * SHA-256 digests of entries. A password's digest covers its fields, and a
+ * folder's covers its fields and its children's digests in order, so equal
+ * digests mean equal subtrees. Entries cache their digest until they or
+ * anything below them changes, so digests after an edit only rehash the path
+ * above it.
+ */
+final class EntryDigest {
+	private static final String ALGORITHM = "SHA-256";
+
+	private EntryDigest() {
+	}
+
+	static byte[] of(Entry entry) {
+		byte[] digest = entry.digest;
+		return (digest != null) ? digest : of(entry, newDigest());
+	}
+
+	private static byte[] of(Entry entry, MessageDigest md) {
+		byte[] digest = entry.digest;
+		if (digest != null) {
+			return digest;
+		}
+
+		// Children first, since each needs the MessageDigest to itself
+		if (entry instanceof FolderEntry) {
+			for (Entry child : (FolderEntry) entry) {
+				of(child, md);
+			}
+		}
+
+		md.reset();
+		updateFields(md, entry);
+		if (entry instanceof FolderEntry) {
+			FolderEntry folder = (FolderEntry) entry;
+			updateLong(md, folder.size());
+			for (Entry child : folder) {
+				md.update(of(child, md));
+			}
+		}
+		digest = md.digest();
+
+		// Readers sharing the read lock may race to store the same value
+		entry.digest = digest;
+		return digest;
+	}
+
+	/**
+	 * A digest of the entry's own fields, without its children.
+	 */
+	static byte[] ofFields(Entry entry) {
+		if (!(entry instanceof FolderEntry)) {
+			return of(entry);
+		}
+
+		MessageDigest md = newDigest();
+		updateFields(md, entry);
+		return md.digest();
+	}
+
+	private static void updateFields(MessageDigest md, Entry entry) {
+		updateString(md, entry.getType());
+
+		UUID id = entry.getId();
+		updateLong(md, id.getMostSignificantBits());
+		updateLong(md, id.getLeastSignificantBits());
+
+		updateString(md, entry.getName());
+		updateString(md, entry.getDescription());
+		updateLong(md, entry.getCreatedMillis());
+		updateLong(md, entry.getUpdatedMillis());
+
+		if (entry instanceof PasswordEntry) {
+			PasswordEntry password = (PasswordEntry) entry;
+			updateString(md, password.getUsername());
+			updateString(md, password.getPassword());
+		} else if (entry instanceof RootEntry) {
+			updateString(md, ((RootEntry) entry).getUserAgent());
+		}
+
+		Map<String, Object> otherFields = entry.getOtherFields();
+		updateLong(md, otherFields.size());
+		for (Map.Entry<String, Object> field : otherFields.entrySet()) {
+			updateString(md, field.getKey());
+			updateString(md, JSONObject.valueToString(field.getValue()));
+		}
+	}
+
+	// Strings are length-prefixed so that neighboring fields can't run together
+	private static void updateString(MessageDigest md, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		updateLong(md, bytes.length);
+		md.update(bytes);
+	}
+
+	private static void updateLong(MessageDigest md, long value) {
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			md.update((byte) (value >>> shift));
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256
+			throw new AssertionError(e);
+		}
+	}
+}
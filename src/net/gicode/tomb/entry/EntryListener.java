@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+/**
+ * Notified of every change made anywhere under a {@link RootEntry}.
+ */
+public interface EntryListener {
+	public void entryChanged(EntryChange change);
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+
+/**
+ * The state of a tree at one moment, which another thread can read while the
+ * tree keeps changing. Taking one costs nothing up front. Until it is closed,
+ * each entry of the tree keeps a copy of itself from before its first change,
+ * and readers see those copies in place of the changed entries. Entries that
+ * haven't changed are read where they are.
+ */
+public class EntrySnapshot implements AutoCloseable {
+	private final RootEntry root;
+	private final IdentityHashMap<Entry, Entry> preserved = new IdentityHashMap<Entry, Entry>();
+
+	EntrySnapshot(RootEntry root) {
+		this.root = root;
+	}
+
+	public RootEntry getRoot() {
+		return root;
+	}
+
+	/**
+	 * Called before an entry changes in any way a writer could see.
+	 */
+	static void beforeChange(Entry entry) {
+		// Entries outside a tree, including trees still being read, are in no snapshot
+		RootEntry root = entry.getRoot();
+		if (root == null) {
+			return;
+		}
+		for (EntrySnapshot snapshot : root.getSnapshots()) {
+			snapshot.preserve(entry);
+		}
+	}
+
+	/**
+	 * Called before an entry leaves its tree. Its later changes can't reach the
+	 * tree's snapshots, so it is kept now along with everything below it.
+	 */
+	static void beforeDetach(Entry entry) {
+		RootEntry root = entry.getRoot();
+		if (root == null) {
+			return;
+		}
+		for (EntrySnapshot snapshot : root.getSnapshots()) {
+			snapshot.preserveTree(entry);
+		}
+	}
+
+	private synchronized void preserve(Entry entry) {
+		if (!preserved.containsKey(entry)) {
+			preserved.put(entry, entry.copy());
+		}
+	}
+
+	private synchronized void preserveTree(Entry entry) {
+		Entry copy = preserved.get(entry);
+		if (copy == null) {
+			copy = entry.copy();
+			preserved.put(entry, copy);
+		}
+
+		// Only the children the snapshot holds, and none that are still unread
+		if (copy instanceof FolderEntry) {
+			Entry[] children = ((FolderEntry) copy).childArray();
+			if (children != null) {
+				for (Entry child : children) {
+					preserveTree(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an entry as it was when the snapshot was taken. The reader gets the
+	 * copy kept from before the entry's first change, or else the entry itself,
+	 * and runs while no change can start. So it must not block, and must read a
+	 * folder's children through FolderEntry.getPendingChildren and childArray,
+	 * resolving each in turn.
+	 */
+	synchronized void read(Entry entry, EntryReader reader) throws IOException {
+		Entry copy = preserved.get(entry);
+		reader.read((copy != null) ? copy : entry);
+	}
+
+	@Override
+	public void close() {
+		root.closed(this);
+		synchronized (this) {
+			preserved.clear();
+		}
+	}
+
+	interface EntryReader {
+		void read(Entry entry) throws IOException;
+	}
+}
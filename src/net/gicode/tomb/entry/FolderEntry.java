@@ -6,123 +6,303 @@
  */
 package net.gicode.tomb.entry;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.ListIterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 public class FolderEntry extends Entry implements Iterable<Entry> {
 	public static final String FOLDER_TYPE = "folder";
 
-	private static final String ENTRIES_KEY = "entries";
+	static final String ENTRIES_KEY = "entries";
 
 	private ArrayList<Entry> entries = new ArrayList<Entry>();
+	// Children still in their stored form, read on first use. Cleared once entries is
+	// complete, so readers that see it cleared can use entries without locking.
+	private volatile BinaryEntryCodec.PendingChildren pending = null;
+	// Children by name, built on the first lookup and kept up to date after that
+	private volatile HashMap<String, List<Entry>> nameIndex = null;
+	// Newest update time below this folder. Removing a child doesn't lower it, but
+	// removal touches the folder anyway.
+	private long newestChild = 0;
 
 	public FolderEntry(String name, String description) {
 		super(name, description);
+	}
 
-		data.put(ENTRIES_KEY, new JSONArray());
+	FolderEntry() {
 	}
 
-	public FolderEntry(JSONObject data) {
-		super(data);
+	void setPendingChildren(BinaryEntryCodec.PendingChildren pending) {
+		this.pending = pending;
+	}
 
-		JSONArray rawEntries = data.getJSONArray(ENTRIES_KEY);
+	BinaryEntryCodec.PendingChildren getPendingChildren() {
+		return pending;
+	}
 
-		for (int c = 0; c < rawEntries.length(); ++c) {
-			JSONObject rawEntry = rawEntries.getJSONObject(c);
-			Entry entry;
+	/**
+	 * The children without reading any, or null while they are still unread.
+	 */
+	Entry[] childArray() {
+		return (pending != null) ? null : entries.toArray(new Entry[entries.size()]);
+	}
 
-			switch (rawEntry.getString(TYPE_KEY)) {
-			case FOLDER_TYPE:
-				entry = new FolderEntry(rawEntry);
-				break;
-			case PasswordEntry.PASSWORD_TYPE:
-				entry = new PasswordEntry(rawEntry);
-				break;
-			default:
-				// XXX PANIC
-				System.err.println("Unknown entry type.");
-				System.exit(1);
-				return;
-			}
+	private ArrayList<Entry> children() {
+		if (pending != null) {
+			readPending();
+		}
+		return entries;
+	}
 
-			entries.add(entry);
+	// Readers sharing the tree's read lock may get here together
+	private synchronized void readPending() {
+		BinaryEntryCodec.PendingChildren reading = pending;
+		if (reading == null) {
+			return;
+		}
+
+		EntrySnapshot.beforeChange(this);
+		try {
+			reading.readInto(this);
+		} finally {
+			pending = null;
 		}
 	}
 
+	/**
+	 * Appends a child read from storage, without touching the folder.
+	 */
+	void readChild(Entry entry) {
+		EntrySnapshot.beforeChange(this);
+		invalidateDigest();
+		entry.indexHint = entries.size();
+		entries.add(entry);
+		entry.parent = this;
+		indexName(entry);
+		childUpdated(entry.getNewestUpdateMillis());
+	}
+
 	public void addEntry(Entry entry) {
-		addEntry(entry, entries.size());
+		changeLocked(() -> insertEntry(entry, children().size(), Instant.now().toEpochMilli()));
 	}
 
 	public void addEntry(Entry entry, int index) {
-		JSONArray rawEntries = data.getJSONArray(ENTRIES_KEY);
+		changeLocked(() -> insertEntry(entry, index, Instant.now().toEpochMilli()));
+	}
 
-		touch();
-		entries.add(index, entry);
-		for (ListIterator<Entry> i = entries.listIterator(index); i.hasNext();) {
-			rawEntries.put(index++, i.next().data);
+	/**
+	 * Inserts a child, updating the folder at the given time. Journal replay
+	 * passes the time of the recorded change rather than the current one.
+	 */
+	void insertEntry(Entry entry, int index, long updated) {
+		RootEntry root = getRoot();
+		// An entry moving in from another tree leaves that tree's snapshots first
+		if ((entry.parent != null) && (entry.getRoot() != root)) {
+			EntrySnapshot.beforeDetach(entry);
 		}
+
+		setUpdated(updated);
+		children().add(index, entry);
+		entry.parent = this;
+		entry.indexHint = index;
+		indexName(entry);
+		entry.propagateUpdate(entry.getNewestUpdateMillis());
+
+		if (root != null) {
+			root.attached(entry);
+		}
+		if ((root != null) && root.hasListeners()) {
+			root.fireChange(EntryChange.add(getPath(), index, entry, getUpdatedMillis()));
+		}
+	}
+
+	@Override
+	public long getNewestUpdateMillis() {
+		return Math.max(getUpdatedMillis(), newestChild);
+	}
+
+	void childUpdated(long time) {
+		if (time > newestChild) {
+			EntrySnapshot.beforeChange(this);
+			newestChild = time;
+		}
+	}
+
+	@Override
+	FolderEntry copy() {
+		FolderEntry copy = (FolderEntry) super.copy();
+		// A reader may be filling in entries, which only counts once pending is clear
+		copy.pending = pending;
+		copy.entries = (copy.pending != null) ? new ArrayList<Entry>() : new ArrayList<Entry>(entries);
+		copy.nameIndex = null;
+		return copy;
 	}
 
 	public Entry findFirst(String name) {
+		return findFirst(name, false);
+	}
+
+	public FolderEntry findFirstFolder(String name) {
+		return (FolderEntry) findFirst(name, true);
+	}
+
+	private Entry findFirst(String name, boolean folder) {
+		HashMap<String, List<Entry>> names = nameIndex;
+		if (names == null) {
+			names = buildNameIndex();
+		}
+
+		List<Entry> named = names.get(name);
+		if (named == null) {
+			return null;
+		}
+
+		// Names are rarely repeated, so comparing positions is cheap
 		Entry found = null;
-		for (Entry entry : entries) {
-			if (entry.getName().equals(name)) {
+		int foundIndex = Integer.MAX_VALUE;
+		for (Entry entry : named) {
+			if (folder && !(entry instanceof FolderEntry)) {
+				continue;
+			}
+			int index = indexOf(entry);
+			if (index < foundIndex) {
 				found = entry;
+				foundIndex = index;
 			}
 		}
-
 		return found;
 	}
 
-	public FolderEntry findFirstFolder(String name) {
-		FolderEntry found = null;
-		for (Entry entry : entries) {
-			if ((entry instanceof FolderEntry) && (entry.getName().equals(name))) {
-				found = (FolderEntry) entry;
+	// Readers sharing the tree's read lock may get here together
+	private synchronized HashMap<String, List<Entry>> buildNameIndex() {
+		if (nameIndex == null) {
+			HashMap<String, List<Entry>> index = new HashMap<String, List<Entry>>();
+			for (Entry entry : children()) {
+				indexName(index, entry);
 			}
+			nameIndex = index;
 		}
+		return nameIndex;
+	}
 
-		return found;
+	private void indexName(Entry entry) {
+		if (nameIndex != null) {
+			indexName(nameIndex, entry);
+		}
 	}
 
-	public void removeFirstEntry(Entry entry) {
-		int location = entries.indexOf(entry);
+	private static void indexName(HashMap<String, List<Entry>> index, Entry entry) {
+		List<Entry> named = index.get(entry.getName());
+		if (named == null) {
+			named = new ArrayList<Entry>(1);
+			index.put(entry.getName(), named);
+		}
+		named.add(entry);
+	}
 
-		if (location == -1) {
-			System.err.println("WARNING: Entry not found during removal.");
+	private void unindexName(Entry entry, String name) {
+		if (nameIndex == null) {
 			return;
 		}
 
-		JSONArray rawEntries = data.getJSONArray(ENTRIES_KEY);
+		List<Entry> named = nameIndex.get(name);
+		if (named == null) {
+			return;
+		}
+		for (int c = 0; c < named.size(); ++c) {
+			if (named.get(c) == entry) {
+				named.remove(c);
+				break;
+			}
+		}
+		if (named.isEmpty()) {
+			nameIndex.remove(name);
+		}
+	}
 
-		touch();
-		entries.remove(entry);
-		rawEntries.remove(location);
+	/**
+	 * Called by a child after its name changes.
+	 */
+	void renamed(Entry entry, String oldName) {
+		unindexName(entry, oldName);
+		indexName(entry);
+	}
+
+	public void removeFirstEntry(Entry entry) {
+		changeLocked(() -> {
+			int location = indexOf(entry);
+
+			if (location == -1) {
+				System.err.println("WARNING: Entry not found during removal.");
+				return;
+			}
+
+			touch();
+			children().remove(location);
+			removed(entry, location);
+		});
 	}
 
 	public void remove(int index) {
-		JSONArray rawEntries = data.getJSONArray(ENTRIES_KEY);
+		changeLocked(() -> removeEntry(index, Instant.now().toEpochMilli()));
+	}
+
+	void removeEntry(int index, long updated) {
+		setUpdated(updated);
+		Entry entry = children().remove(index);
+		removed(entry, index);
+	}
 
-		touch();
-		entries.remove(index);
-		rawEntries.remove(index);
+	private void removed(Entry entry, int index) {
+		unindexName(entry, entry.getName());
+
+		RootEntry root = getRoot();
+
+		// A moved entry may already belong to its new folder
+		if (entry.parent == this) {
+			EntrySnapshot.beforeDetach(entry);
+			entry.parent = null;
+			if (root != null) {
+				root.detached(entry);
+			}
+		}
+
+		if ((root != null) && root.hasListeners()) {
+			root.fireChange(EntryChange.remove(getPath(), index, getUpdatedMillis()));
+		}
 	}
 
 	public int indexOf(Entry entry) {
-		return entries.indexOf(entry);
+		// Children only move by as many places as there were inserts and removals ahead of
+		// them, so search outward from where the entry was last seen. Readers sharing the
+		// read lock may race to update the hint, which is harmless since it's only a hint.
+		int size = children().size();
+		int hint = Math.min(entry.indexHint, size);
+		for (int distance = 0; (hint + distance < size) || (hint - distance >= 0); ++distance) {
+			int after = hint + distance;
+			if ((after < size) && (children().get(after) == entry)) {
+				entry.indexHint = after;
+				return after;
+			}
+			int before = hint - distance - 1;
+			if ((before >= 0) && (children().get(before) == entry)) {
+				entry.indexHint = before;
+				return before;
+			}
+		}
+		return -1;
 	}
 
 	public Entry get(int index) {
-		return entries.get(index);
+		return children().get(index);
 	}
 
 	public int size() {
-		return entries.size();
+		BinaryEntryCodec.PendingChildren stored = pending;
+		return (stored != null) ? stored.getCount() : entries.size();
 	}
 
 	@Override
@@ -140,13 +320,13 @@ public class FolderEntry extends Entry implements Iterable<Entry> {
 
 		@Override
 		public boolean hasNext() {
-			return index < entries.size();
+			return index < children().size();
 		}
 
 		@Override
 		public Entry next() {
 			if (this.hasNext()) {
-				return entries.get(index++);
+				return children().get(index++);
 			}
 			throw new NoSuchElementException();
 		}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Compares JsonEntryCodec with JSON-java on a generated tree of passwords. The
+ * JSON-java side goes through a JSONObject tree, as entries once did.
+ */
+public class JsonCodecBenchmark {
+	private static final int WARMUP_ENTRIES = 10000;
+	private static final int WARMUP_ROUNDS = 10;
+	private static final int ENTRIES_PER_FOLDER = 50;
+	private static final int INDENT = 2;
+
+	private static final String PASSWORD_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
+			+ "0123456789!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+	private long size = 0;
+	private double writeMillis = 0;
+	private double readMillis = 0;
+	private double jsonWriteMillis = 0;
+	private double jsonReadMillis = 0;
+
+	public void run(int entries) throws IOException {
+		for (int c = 0; c < WARMUP_ROUNDS; ++c) {
+			measure(generate(WARMUP_ENTRIES));
+		}
+		measure(generate(entries));
+	}
+
+	private void measure(RootEntry root) throws IOException {
+		long start = System.nanoTime();
+		ByteArrayOutputStream jsonOut = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(jsonOut, StandardCharsets.UTF_8);
+		toJSONObject(root).write(writer, INDENT, 0);
+		writer.flush();
+		jsonWriteMillis = millis(start);
+
+		start = System.nanoTime();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonEntryCodec.write(root, out, INDENT);
+		writeMillis = millis(start);
+
+		byte[] encoded = out.toByteArray();
+		if (!new JSONObject(new String(encoded, StandardCharsets.UTF_8))
+				.similar(new JSONObject(new String(jsonOut.toByteArray(), StandardCharsets.UTF_8)))) {
+			throw new IOException("Output differs from JSON-java");
+		}
+		size = encoded.length;
+
+		start = System.nanoTime();
+		fromJSONObject(new JSONObject(new JSONTokener(new ByteArrayInputStream(encoded))));
+		jsonReadMillis = millis(start);
+
+		start = System.nanoTime();
+		JsonEntryCodec.read(new ByteArrayInputStream(encoded));
+		readMillis = millis(start);
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public double getWriteMillis() {
+		return writeMillis;
+	}
+
+	public double getReadMillis() {
+		return readMillis;
+	}
+
+	public double getJsonWriteMillis() {
+		return jsonWriteMillis;
+	}
+
+	public double getJsonReadMillis() {
+		return jsonReadMillis;
+	}
+
+	private static JSONObject toJSONObject(Entry entry) {
+		JSONObject object = new JSONObject();
+		object.put(Entry.TYPE_KEY, entry.getType());
+		object.put(Entry.ID_KEY, entry.getId().toString());
+		object.put(Entry.NAME_KEY, entry.getName());
+		object.put(Entry.DESCRIPTION_KEY, entry.getDescription());
+		object.put(Entry.CREATED_KEY, entry.getCreatedMillis());
+		object.put(Entry.UPDATED_KEY, entry.getUpdatedMillis());
+
+		if (entry instanceof PasswordEntry) {
+			object.put(PasswordEntry.USER_KEY, ((PasswordEntry) entry).getUsername());
+			object.put(PasswordEntry.PASSWORD_KEY, ((PasswordEntry) entry).getPassword());
+		} else if (entry instanceof RootEntry) {
+			object.put(RootEntry.USER_AGENT_KEY, ((RootEntry) entry).getUserAgent());
+		}
+		for (Map.Entry<String, Object> field : entry.getOtherFields().entrySet()) {
+			object.put(field.getKey(), field.getValue());
+		}
+
+		if (entry instanceof FolderEntry) {
+			JSONArray children = new JSONArray();
+			for (Entry child : (FolderEntry) entry) {
+				children.put(toJSONObject(child));
+			}
+			object.put(FolderEntry.ENTRIES_KEY, children);
+		}
+		return object;
+	}
+
+	private static Entry fromJSONObject(JSONObject object) {
+		Entry entry = Entry.create(object.getString(Entry.TYPE_KEY));
+		for (String key : object.keySet()) {
+			if (key.equals(FolderEntry.ENTRIES_KEY) && (entry instanceof FolderEntry)) {
+				JSONArray children = object.getJSONArray(key);
+				for (int c = 0; c < children.length(); ++c) {
+					((FolderEntry) entry).readChild(fromJSONObject(children.getJSONObject(c)));
+				}
+			} else {
+				entry.readField(key, object.get(key));
+			}
+		}
+		return entry;
+	}
+
+	private static RootEntry generate(int entries) {
+		Random random = new Random(0);
+		RootEntry root = new RootEntry();
+
+		FolderEntry folder = null;
+		for (int c = 0; c < entries; ++c) {
+			if (c % ENTRIES_PER_FOLDER == 0) {
+				folder = new FolderEntry("Folder " + (c / ENTRIES_PER_FOLDER), "Generated folder");
+				root.addEntry(folder);
+			}
+
+			char[] password = new char[20];
+			for (int p = 0; p < password.length; ++p) {
+				password[p] = PASSWORD_CHARACTERS.charAt(random.nextInt(PASSWORD_CHARACTERS.length()));
+			}
+			folder.addEntry(new PasswordEntry("Site " + c, "https://example.com/login/" + c, "user" + c + "@example.com",
+					new String(password)));
+		}
+
+		return root;
+	}
+
+	private static double millis(long start) {
+		return (System.nanoTime() - start) / 1e6;
+	}
+}
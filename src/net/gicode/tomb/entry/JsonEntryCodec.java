@@ -0,0 +1,802 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads and writes the JSON form of an entry tree directly as UTF-8 bytes,
+ * building entries without an intermediate JSONObject tree.
+ *
+ * Output is laid out the way JSON-java writes, with each entry's own fields
+ * first and its children last. Fields the entries don't know are kept as the
+ * values JSONTokener would build.
+ */
+public class JsonEntryCodec {
+	private static final int BUFFER_SIZE = 8192;
+
+	// Longest run of digits that always fits in a long
+	private static final int MAX_LONG_DIGITS = 18;
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	public static RootEntry read(InputStream in) throws IOException {
+		Entry entry;
+		try {
+			entry = new JsonReader(in).readDocument();
+		} catch (JSONException | IllegalArgumentException e) {
+			throw new IOException("Invalid JSON payload (" + e.getMessage() + ")", e);
+		}
+
+		if (!(entry instanceof RootEntry)) {
+			throw new IOException("JSON payload does not start with the root");
+		}
+		return (RootEntry) entry;
+	}
+
+	public static void write(RootEntry root, OutputStream out, int indentFactor) throws IOException {
+		JsonWriter writer = new JsonWriter(out, null);
+		writer.writeEntry(root, indentFactor, 0);
+		writer.flush();
+	}
+
+	public static void write(EntrySnapshot snapshot, OutputStream out, int indentFactor) throws IOException {
+		JsonWriter writer = new JsonWriter(out, snapshot);
+		writer.writeEntry(snapshot.getRoot(), indentFactor, 0);
+		writer.flush();
+	}
+
+	/**
+	 * A single entry and its children as compact JSON.
+	 */
+	static String toJSON(Entry entry) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			JsonWriter writer = new JsonWriter(out, null);
+			writer.writeEntry(entry, 0, 0);
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	static Entry fromJSON(String text) {
+		try {
+			Entry entry = new JsonReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))
+					.readDocument();
+			if (entry instanceof RootEntry) {
+				throw new IllegalArgumentException("Only the top level is a root.");
+			}
+			return entry;
+		} catch (IOException | JSONException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	private static class JsonReader {
+		private final InputStream in;
+
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int position = 0;
+		private int limit = 0;
+
+		JsonReader(InputStream in) {
+			this.in = in;
+		}
+
+		Entry readDocument() throws IOException {
+			if (skipWhitespace() != '{') {
+				throw syntaxError("A JSONObject text must begin with '{'");
+			}
+			++position;
+			return readEntry();
+		}
+
+		private Entry readEntry() throws IOException {
+			Entry entry = null;
+			List<Entry> children = null;
+
+			// Older files often list the type last, so fields wait until it arrives
+			List<String> pendingKeys = null;
+			List<Object> pendingValues = null;
+
+			int next = skipWhitespace();
+			while (next != '}') {
+				if (next != '"') {
+					throw syntaxError("Expected a quoted key");
+				}
+				++position;
+				String key = readString();
+
+				if (skipWhitespace() != ':') {
+					throw syntaxError("Expected a ':' after a key");
+				}
+				++position;
+
+				if (key.equals(FolderEntry.ENTRIES_KEY) && (skipWhitespace() == '[')) {
+					++position;
+					children = readChildren();
+				} else if (key.equals(Entry.TYPE_KEY) && (entry == null)) {
+					entry = Entry.create(Entry.stringValue(readValue()));
+					if (pendingKeys != null) {
+						for (int c = 0; c < pendingKeys.size(); ++c) {
+							entry.readField(pendingKeys.get(c), pendingValues.get(c));
+						}
+					}
+				} else if (entry != null) {
+					entry.readField(key, readValue());
+				} else {
+					if (pendingKeys == null) {
+						pendingKeys = new ArrayList<>();
+						pendingValues = new ArrayList<>();
+					}
+					pendingKeys.add(key);
+					pendingValues.add(readValue());
+				}
+
+				next = skipWhitespace();
+				if (next == ',') {
+					++position;
+					next = skipWhitespace();
+				} else if (next != '}') {
+					throw syntaxError("Expected a ',' or '}'");
+				}
+			}
+			++position;
+
+			if (entry == null) {
+				throw syntaxError("Entry has no type");
+			}
+			if (children != null) {
+				if (!(entry instanceof FolderEntry)) {
+					throw syntaxError("Only folders have entries");
+				}
+				for (Entry child : children) {
+					((FolderEntry) entry).readChild(child);
+				}
+			}
+			return entry;
+		}
+
+		private List<Entry> readChildren() throws IOException {
+			List<Entry> children = new ArrayList<>();
+
+			int next = skipWhitespace();
+			while (next != ']') {
+				if (next != '{') {
+					throw syntaxError("Expected an entry");
+				}
+				++position;
+
+				Entry child = readEntry();
+				if (child instanceof RootEntry) {
+					throw syntaxError("Only the top level is a root");
+				}
+				children.add(child);
+
+				next = skipWhitespace();
+				if (next == ',') {
+					++position;
+					next = skipWhitespace();
+				} else if (next != ']') {
+					throw syntaxError("Expected a ',' or ']'");
+				}
+			}
+			++position;
+
+			return children;
+		}
+
+		private JSONObject readObject() throws IOException {
+			JSONObject object = new JSONObject();
+
+			if (skipWhitespace() == '}') {
+				++position;
+				return object;
+			}
+
+			while (true) {
+				if (skipWhitespace() != '"') {
+					throw syntaxError("Expected a quoted key");
+				}
+				++position;
+				String key = readString();
+
+				if (skipWhitespace() != ':') {
+					throw syntaxError("Expected a ':' after a key");
+				}
+				++position;
+
+				Object value = readValue();
+				if (object.has(key)) {
+					throw syntaxError("Duplicate key \"" + key + "\"");
+				}
+				object.put(key, value);
+
+				int next = skipWhitespace();
+				++position;
+				if (next == '}') {
+					return object;
+				} else if (next != ',') {
+					throw syntaxError("Expected a ',' or '}'");
+				}
+			}
+		}
+
+		private JSONArray readArray() throws IOException {
+			JSONArray array = new JSONArray();
+
+			if (skipWhitespace() == ']') {
+				++position;
+				return array;
+			}
+
+			while (true) {
+				array.put(readValue());
+
+				int next = skipWhitespace();
+				++position;
+				if (next == ']') {
+					return array;
+				} else if (next != ',') {
+					throw syntaxError("Expected a ',' or ']'");
+				}
+			}
+		}
+
+		private Object readValue() throws IOException {
+			int next = skipWhitespace();
+			switch (next) {
+			case '{':
+				++position;
+				return readObject();
+			case '[':
+				++position;
+				return readArray();
+			case '"':
+				++position;
+				return readString();
+			case 't':
+				readLiteral("true");
+				return Boolean.TRUE;
+			case 'f':
+				readLiteral("false");
+				return Boolean.FALSE;
+			case 'n':
+				readLiteral("null");
+				return JSONObject.NULL;
+			default:
+				if ((next == '-') || ((next >= '0') && (next <= '9'))) {
+					return readNumber();
+				}
+				throw syntaxError("Unexpected " + ((next == -1) ? "end of input" : "character " + (char) next));
+			}
+		}
+
+		private String readString() throws IOException {
+			StringBuilder builder = null;
+			int start = position;
+
+			while (true) {
+				if (position == limit) {
+					if (!fill(start)) {
+						throw syntaxError("Unterminated string");
+					}
+					start = 0;
+				}
+
+				byte b = buffer[position];
+				if (b == '"') {
+					String run = new String(buffer, start, position - start, StandardCharsets.UTF_8);
+					++position;
+					return (builder == null) ? run : builder.append(run).toString();
+				} else if (b == '\\') {
+					if (builder == null) {
+						builder = new StringBuilder();
+					}
+					builder.append(new String(buffer, start, position - start, StandardCharsets.UTF_8));
+					++position;
+					builder.append(readEscape());
+					start = position;
+				} else if ((b == '\n') || (b == '\r') || (b == 0)) {
+					throw syntaxError("Unterminated string");
+				} else {
+					++position;
+				}
+			}
+		}
+
+		private char readEscape() throws IOException {
+			int escaped = read();
+			switch (escaped) {
+			case 'b':
+				return '\b';
+			case 't':
+				return '\t';
+			case 'n':
+				return '\n';
+			case 'f':
+				return '\f';
+			case 'r':
+				return '\r';
+			case 'u':
+				int value = 0;
+				for (int c = 0; c < 4; ++c) {
+					int digit = Character.digit(read(), 16);
+					if (digit == -1) {
+						throw syntaxError("Illegal escape");
+					}
+					value = (value << 4) | digit;
+				}
+				return (char) value;
+			case '"':
+			case '\'':
+			case '\\':
+			case '/':
+				return (char) escaped;
+			default:
+				throw syntaxError("Illegal escape");
+			}
+		}
+
+		private Object readNumber() throws IOException {
+			int start = position;
+
+			while (true) {
+				if (position == limit) {
+					boolean filled = fill(start);
+					start = 0;
+					if (!filled) {
+						break;
+					}
+				}
+
+				byte b = buffer[position];
+				if (((b >= '0') && (b <= '9')) || (b == '-') || (b == '+') || (b == '.') || (b == 'e')
+						|| (b == 'E')) {
+					++position;
+				} else {
+					break;
+				}
+			}
+
+			// Timestamps are plain integers, which are converted here without a string
+			boolean negative = buffer[start] == '-';
+			int digitStart = negative ? start + 1 : start;
+			int digits = position - digitStart;
+			if ((digits > 0) && (digits <= MAX_LONG_DIGITS) && ((buffer[digitStart] != '0') || (digits == 1))
+					&& !(negative && (buffer[digitStart] == '0'))) {
+				long value = 0;
+				int c = digitStart;
+				for (; c < position; ++c) {
+					byte b = buffer[c];
+					if ((b < '0') || (b > '9')) {
+						break;
+					}
+					value = value * 10 + (b - '0');
+				}
+
+				if (c == position) {
+					value = negative ? -value : value;
+					if ((value >= Integer.MIN_VALUE) && (value <= Integer.MAX_VALUE)) {
+						return Integer.valueOf((int) value);
+					}
+					return Long.valueOf(value);
+				}
+			}
+
+			String text = new String(buffer, start, position - start, StandardCharsets.US_ASCII);
+			Object value = JSONObject.stringToValue(text);
+			if (!(value instanceof Number)) {
+				throw syntaxError("Invalid number " + text);
+			}
+			return value;
+		}
+
+		private void readLiteral(String literal) throws IOException {
+			for (int c = 0; c < literal.length(); ++c) {
+				if (read() != literal.charAt(c)) {
+					throw syntaxError("Expected " + literal);
+				}
+			}
+		}
+
+		private int read() throws IOException {
+			if ((position == limit) && !fill(position)) {
+				return -1;
+			}
+			return buffer[position++] & 0xFF;
+		}
+
+		private int skipWhitespace() throws IOException {
+			while (true) {
+				if ((position == limit) && !fill(position)) {
+					return -1;
+				}
+
+				int b = buffer[position] & 0xFF;
+				if ((b != ' ') && (b != '\n') && (b != '\r') && (b != '\t')) {
+					return b;
+				}
+				++position;
+			}
+		}
+
+		/**
+		 * Reads more input, keeping everything from keep onwards at the start of the
+		 * buffer.
+		 */
+		private boolean fill(int keep) throws IOException {
+			int kept = limit - keep;
+			if (keep > 0) {
+				System.arraycopy(buffer, keep, buffer, 0, kept);
+			} else if (kept == buffer.length) {
+				// A single string longer than the buffer
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			position -= keep;
+			limit = kept;
+
+			int length = in.read(buffer, limit, buffer.length - limit);
+			if (length <= 0) {
+				return false;
+			}
+			limit += length;
+			return true;
+		}
+
+		private JSONException syntaxError(String message) {
+			return new JSONException(message);
+		}
+	}
+
+	private static class JsonWriter {
+		private final OutputStream out;
+		private final EntrySnapshot snapshot;
+
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int count = 0;
+
+		// A snapshot's entries have their fields written to memory first, since they
+		// are read while no change can start
+		private ByteArrayOutputStream fields = null;
+		private JsonWriter fieldsWriter = null;
+		// The children of the folder just read, whichever form they were in
+		private BinaryEntryCodec.PendingChildren pending = null;
+		private Entry[] children = null;
+
+		JsonWriter(OutputStream out, EntrySnapshot snapshot) {
+			this.out = out;
+			this.snapshot = snapshot;
+			if (snapshot != null) {
+				fields = new ByteArrayOutputStream();
+				fieldsWriter = new JsonWriter(fields, null);
+			}
+		}
+
+		void writeEntry(Entry entry, int indentFactor, int indent) throws IOException {
+			int newIndent = indent + indentFactor;
+			writeByte('{');
+
+			if (snapshot == null) {
+				writeFields(entry, indentFactor, newIndent);
+				if (entry instanceof FolderEntry) {
+					FolderEntry folder = (FolderEntry) entry;
+					writeKey(FolderEntry.ENTRIES_KEY, false, indentFactor, newIndent);
+					writeChildren(folder, folder.size(), indentFactor, newIndent);
+				}
+			} else {
+				fields.reset();
+				snapshot.read(entry, resolved -> {
+					fieldsWriter.writeFields(resolved, indentFactor, newIndent);
+					fieldsWriter.flushBuffer();
+					if (resolved instanceof FolderEntry) {
+						FolderEntry folder = (FolderEntry) resolved;
+						pending = folder.getPendingChildren();
+						children = (pending == null) ? folder.childArray() : null;
+					}
+				});
+				BinaryEntryCodec.PendingChildren unread = pending;
+				Entry[] read = children;
+				pending = null;
+				children = null;
+
+				flushBuffer();
+				fields.writeTo(out);
+				if (entry instanceof FolderEntry) {
+					if (unread != null) {
+						// Read into a folder of their own, which nothing else can reach
+						FolderEntry stored = new FolderEntry();
+						unread.readInto(stored);
+						read = stored.childArray();
+					}
+					writeKey(FolderEntry.ENTRIES_KEY, false, indentFactor, newIndent);
+					writeChildren(Arrays.asList(read), read.length, indentFactor, newIndent);
+				}
+			}
+
+			if (indentFactor > 0) {
+				writeByte('\n');
+			}
+			writeIndent(indent);
+			writeByte('}');
+		}
+
+		private void writeFields(Entry entry, int indentFactor, int indent) throws IOException {
+			writeKey(Entry.TYPE_KEY, true, indentFactor, indent);
+			writeString(entry.getType());
+			writeStringField(Entry.ID_KEY, entry.getId().toString(), indentFactor, indent);
+			writeStringField(Entry.NAME_KEY, entry.getName(), indentFactor, indent);
+			writeStringField(Entry.DESCRIPTION_KEY, entry.getDescription(), indentFactor, indent);
+			writeKey(Entry.CREATED_KEY, false, indentFactor, indent);
+			writeAscii(Long.toString(entry.getCreatedMillis()));
+			writeKey(Entry.UPDATED_KEY, false, indentFactor, indent);
+			writeAscii(Long.toString(entry.getUpdatedMillis()));
+
+			if (entry instanceof PasswordEntry) {
+				PasswordEntry password = (PasswordEntry) entry;
+				writeStringField(PasswordEntry.USER_KEY, password.getUsername(), indentFactor, indent);
+				writeStringField(PasswordEntry.PASSWORD_KEY, password.getPassword(), indentFactor, indent);
+			} else if (entry instanceof RootEntry) {
+				writeStringField(RootEntry.USER_AGENT_KEY, ((RootEntry) entry).getUserAgent(), indentFactor, indent);
+			}
+
+			for (Map.Entry<String, Object> field : entry.getOtherFields().entrySet()) {
+				writeKey(field.getKey(), false, indentFactor, indent);
+				writeValue(field.getValue(), indentFactor, indent);
+			}
+		}
+
+		private void writeChildren(Iterable<Entry> children, int length, int indentFactor, int indent)
+				throws IOException {
+			writeByte('[');
+
+			if (length == 1) {
+				writeEntry(children.iterator().next(), indentFactor, indent);
+			} else if (length != 0) {
+				int newIndent = indent + indentFactor;
+				boolean first = true;
+				for (Entry child : children) {
+					if (!first) {
+						writeByte(',');
+					}
+					if (indentFactor > 0) {
+						writeByte('\n');
+					}
+					writeIndent(newIndent);
+					writeEntry(child, indentFactor, newIndent);
+					first = false;
+				}
+				if (indentFactor > 0) {
+					writeByte('\n');
+				}
+				writeIndent(indent);
+			}
+
+			writeByte(']');
+		}
+
+		private void writeStringField(String key, String value, int indentFactor, int indent) throws IOException {
+			// A missing field reads back as empty
+			if (value != null) {
+				writeKey(key, false, indentFactor, indent);
+				writeString(value);
+			}
+		}
+
+		private void writeKey(String key, boolean first, int indentFactor, int indent) throws IOException {
+			if (!first) {
+				writeByte(',');
+			}
+			if (indentFactor > 0) {
+				writeByte('\n');
+			}
+			writeIndent(indent);
+			writeString(key);
+			writeByte(':');
+			if (indentFactor > 0) {
+				writeByte(' ');
+			}
+		}
+
+		// Layout follows JSONObject.write and JSONArray.write exactly
+		private void writeObject(JSONObject object, int indentFactor, int indent) throws IOException {
+			int length = object.length();
+			writeByte('{');
+
+			if (length == 1) {
+				String key = object.keySet().iterator().next();
+				writeString(key);
+				writeByte(':');
+				if (indentFactor > 0) {
+					writeByte(' ');
+				}
+				writeValue(object.opt(key), indentFactor, indent);
+			} else if (length != 0) {
+				int newIndent = indent + indentFactor;
+				boolean needsComma = false;
+				for (String key : object.keySet()) {
+					if (needsComma) {
+						writeByte(',');
+					}
+					if (indentFactor > 0) {
+						writeByte('\n');
+					}
+					writeIndent(newIndent);
+					writeString(key);
+					writeByte(':');
+					if (indentFactor > 0) {
+						writeByte(' ');
+					}
+					writeValue(object.opt(key), indentFactor, newIndent);
+					needsComma = true;
+				}
+				if (indentFactor > 0) {
+					writeByte('\n');
+				}
+				writeIndent(indent);
+			}
+
+			writeByte('}');
+		}
+
+		private void writeArray(JSONArray array, int indentFactor, int indent) throws IOException {
+			int length = array.length();
+			writeByte('[');
+
+			if (length == 1) {
+				writeValue(array.opt(0), indentFactor, indent);
+			} else if (length != 0) {
+				int newIndent = indent + indentFactor;
+				for (int c = 0; c < length; ++c) {
+					if (c > 0) {
+						writeByte(',');
+					}
+					if (indentFactor > 0) {
+						writeByte('\n');
+					}
+					writeIndent(newIndent);
+					writeValue(array.opt(c), indentFactor, newIndent);
+				}
+				if (indentFactor > 0) {
+					writeByte('\n');
+				}
+				writeIndent(indent);
+			}
+
+			writeByte(']');
+		}
+
+		private void writeValue(Object value, int indentFactor, int indent) throws IOException {
+			if (value instanceof String) {
+				writeString((String) value);
+			} else if ((value instanceof Long) || (value instanceof Integer)) {
+				writeAscii(value.toString());
+			} else if (value instanceof JSONObject) {
+				writeObject((JSONObject) value, indentFactor, indent);
+			} else if (value instanceof JSONArray) {
+				writeArray((JSONArray) value, indentFactor, indent);
+			} else {
+				byte[] bytes = JSONObject.valueToString(value).getBytes(StandardCharsets.UTF_8);
+				for (byte b : bytes) {
+					writeByte(b);
+				}
+			}
+		}
+
+		/**
+		 * Quotes and escapes the same characters as JSONObject.quote.
+		 */
+		private void writeString(String value) throws IOException {
+			writeByte('"');
+
+			char previous = 0;
+			int length = value.length();
+			for (int c = 0; c < length; ++c) {
+				// Room for the longest encoding of a single character
+				if (count + 6 > buffer.length) {
+					flushBuffer();
+				}
+
+				char ch = value.charAt(c);
+				if ((ch >= ' ') && (ch < 0x80)) {
+					if ((ch == '"') || (ch == '\\') || ((ch == '/') && (previous == '<'))) {
+						buffer[count++] = '\\';
+					}
+					buffer[count++] = (byte) ch;
+				} else if (ch == '\b') {
+					writeEscape('b');
+				} else if (ch == '\t') {
+					writeEscape('t');
+				} else if (ch == '\n') {
+					writeEscape('n');
+				} else if (ch == '\f') {
+					writeEscape('f');
+				} else if (ch == '\r') {
+					writeEscape('r');
+				} else if ((ch < 0xA0) || ((ch >= 0x2000) && (ch < 0x2100))) {
+					buffer[count++] = '\\';
+					buffer[count++] = 'u';
+					buffer[count++] = HEX[(ch >> 12) & 0xF];
+					buffer[count++] = HEX[(ch >> 8) & 0xF];
+					buffer[count++] = HEX[(ch >> 4) & 0xF];
+					buffer[count++] = HEX[ch & 0xF];
+				} else if (ch < 0x800) {
+					buffer[count++] = (byte) (0xC0 | (ch >> 6));
+					buffer[count++] = (byte) (0x80 | (ch & 0x3F));
+				} else if (Character.isHighSurrogate(ch) && (c + 1 < length)
+						&& Character.isLowSurrogate(value.charAt(c + 1))) {
+					int codePoint = Character.toCodePoint(ch, value.charAt(++c));
+					buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+					buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+					ch = value.charAt(c);
+				} else if (Character.isSurrogate(ch)) {
+					// What the UTF-8 encoder substitutes for an unpaired surrogate
+					buffer[count++] = '?';
+				} else {
+					buffer[count++] = (byte) (0xE0 | (ch >> 12));
+					buffer[count++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+					buffer[count++] = (byte) (0x80 | (ch & 0x3F));
+				}
+				previous = ch;
+			}
+
+			writeByte('"');
+		}
+
+		private void writeEscape(char escaped) {
+			buffer[count++] = '\\';
+			buffer[count++] = (byte) escaped;
+		}
+
+		private void writeAscii(String value) throws IOException {
+			for (int c = 0; c < value.length(); ++c) {
+				writeByte(value.charAt(c));
+			}
+		}
+
+		private void writeIndent(int indent) throws IOException {
+			for (int c = 0; c < indent; ++c) {
+				writeByte(' ');
+			}
+		}
+
+		private void writeByte(int b) throws IOException {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		private void flushBuffer() throws IOException {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+
+		void flush() throws IOException {
+			flushBuffer();
+			out.flush();
+		}
+	}
+}
@@ -6,41 +6,47 @@
  */
 package net.gicode.tomb.entry;
 
-import org.json.JSONObject;
-
 public class PasswordEntry extends Entry {
 	public static final String PASSWORD_TYPE = "password";
 
-	private static final String USER_KEY = "user";
-	private static final String PASSWORD_KEY = "password";
+	static final String USER_KEY = "user";
+	static final String PASSWORD_KEY = "password";
+
+	private String username = "";
+	private String password = "";
 
 	public PasswordEntry(String name, String description, String username, String password) {
 		super(name, description);
 
-		data.put(USER_KEY, username);
-		data.put(PASSWORD_KEY, password);
+		this.username = username;
+		this.password = password;
 	}
 
-	public PasswordEntry(JSONObject data) {
-		super(data);
+	PasswordEntry() {
 	}
 
 	public String getUsername() {
-		return data.getString(USER_KEY);
+		return username;
 	}
 
 	public void setUsername(String username) {
-		touch();
-		data.put(USER_KEY, username);
+		changeLocked(() -> {
+			touch();
+			this.username = username;
+			changed(USER_KEY, username);
+		});
 	}
 
 	public String getPassword() {
-		return data.getString(PASSWORD_KEY);
+		return password;
 	}
 
 	public void setPassword(String password) {
-		touch();
-		data.put(PASSWORD_KEY, password);
+		changeLocked(() -> {
+			touch();
+			this.password = password;
+			changed(PASSWORD_KEY, password);
+		});
 	}
 
 	@Override
@@ -48,6 +54,25 @@ public class PasswordEntry extends Entry {
 		return PASSWORD_TYPE;
 	}
 
+	@Override
+	void readField(String key, Object value) {
+		switch (key) {
+		case USER_KEY:
+			EntrySnapshot.beforeChange(this);
+			invalidateDigest();
+			username = stringValue(value);
+			break;
+		case PASSWORD_KEY:
+			EntrySnapshot.beforeChange(this);
+			invalidateDigest();
+			password = stringValue(value);
+			break;
+		default:
+			super.readField(key, value);
+			break;
+		}
+	}
+
 	@Override
 	public String toString() {
 		String[] entries = { super.toString(), "User: " + getUsername(), "Pass: " + getPassword() };
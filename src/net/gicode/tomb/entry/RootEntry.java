@@ -6,31 +6,265 @@
  */
 package net.gicode.tomb.entry;
 
-import org.json.JSONObject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
+/**
+ * The top of an entry tree. Changes made through the public methods of any
+ * entry in the tree hold the tree's write lock, and other threads read the tree
+ * through read(Supplier). The thread making changes can read without it.
+ */
 public class RootEntry extends FolderEntry {
 	public static final String ROOT_TYPE = "root";
 
 	private static final String ROOT_NAME = "top-level-root";
-	private static final String USER_AGENT_KEY = "user_agent";
+	static final String USER_AGENT_KEY = "user_agent";
 	private static final String USER_AGENT = "net.gicode.tomb v1";
 
+	private String userAgent = USER_AGENT;
+
+	private Set<EntryListener> listenerSet = new CopyOnWriteArraySet<EntryListener>();
+	// Snapshots of this tree that haven't been closed, see EntrySnapshot
+	private List<EntrySnapshot> snapshots = new CopyOnWriteArrayList<EntrySnapshot>();
+	private StampedLock lock = new StampedLock();
+	// Held by a change while it waits for the write lock. StampedLock lets readers in
+	// ahead of a waiting writer, so without this, overlapping readers could keep
+	// changes out forever.
+	private ReentrantLock turnstile = new ReentrantLock();
+	private long generation = 0;
+	// Every entry in the tree by ID, built on the first lookup and kept up to date after that
+	private volatile HashMap<UUID, Entry> idIndex = null;
+
 	public RootEntry() {
 		super(ROOT_NAME, "");
-
-		data.put(USER_AGENT_KEY, USER_AGENT);
 	}
 
-	public RootEntry(JSONObject data) {
-		super(data);
+	public String getUserAgent() {
+		return userAgent;
 	}
 
 	public String export(int indentFactor) {
-		return data.toString(indentFactor);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			export(out, indentFactor);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the same text as export(int), encoded as UTF-8.
+	 */
+	public void export(OutputStream out, int indentFactor) throws IOException {
+		JsonEntryCodec.write(this, out, indentFactor);
+	}
+
+	/**
+	 * Counts modifications anywhere in the tree. Compare it with an earlier value
+	 * to tell whether anything changed since.
+	 */
+	public long getGeneration() {
+		// Usually read between changes, so try without the lock first
+		long stamp = lock.tryOptimisticRead();
+		long current = generation;
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				current = generation;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Runs a query under the tree's read lock. Any number of threads can read at
+	 * once, while changes wait for them to finish. The query must not change the
+	 * tree.
+	 */
+	public <T> T read(Supplier<T> query) {
+		turnstile.lock();
+		turnstile.unlock();
+
+		long stamp = lock.readLock();
+		try {
+			return query.get();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	long lockWrite() {
+		turnstile.lock();
+		try {
+			return lock.writeLock();
+		} finally {
+			turnstile.unlock();
+		}
+	}
+
+	void unlockWrite(long stamp) {
+		lock.unlockWrite(stamp);
+	}
+
+	void modified() {
+		++generation;
+	}
+
+	public Entry findById(UUID id) {
+		HashMap<UUID, Entry> index = idIndex;
+		if (index == null) {
+			index = buildIdIndex();
+		}
+		return index.get(id);
+	}
+
+	// Readers sharing the read lock may get here together
+	private synchronized HashMap<UUID, Entry> buildIdIndex() {
+		if (idIndex == null) {
+			HashMap<UUID, Entry> index = new HashMap<UUID, Entry>();
+			index(index, this, true);
+			idIndex = index;
+		}
+		return idIndex;
+	}
+
+	/**
+	 * The folder holding the entry with the given ID, or null if there is no such
+	 * entry or it is the root.
+	 */
+	public FolderEntry findParentById(UUID id) {
+		Entry entry = findById(id);
+		return (entry == null) ? null : entry.getParent();
+	}
+
+	/**
+	 * Called after an entry is added somewhere in the tree.
+	 */
+	void attached(Entry entry) {
+		// A moved entry is still indexed, along with everything below it
+		if ((idIndex != null) && (idIndex.get(entry.getId()) != entry)) {
+			index(idIndex, entry, false);
+		}
+	}
+
+	/**
+	 * Called after an entry is removed from the tree for good.
+	 */
+	void detached(Entry entry) {
+		if (idIndex == null) {
+			return;
+		}
+
+		idIndex.remove(entry.getId(), entry);
+		if (entry instanceof FolderEntry) {
+			for (Entry child : (FolderEntry) entry) {
+				detached(child);
+			}
+		}
+	}
+
+	void idChanged(Entry entry, UUID oldId) {
+		if (idIndex == null) {
+			return;
+		}
+
+		if (oldId != null) {
+			idIndex.remove(oldId, entry);
+		}
+		index(idIndex, entry, true);
+	}
+
+	private static void index(HashMap<UUID, Entry> index, Entry entry, boolean announce) {
+		Entry existing = index.putIfAbsent(entry.getId(), entry);
+		if ((existing != null) && (existing != entry)) {
+			// Copies of one entry, say from importing a file twice, each need their own ID.
+			// An added entry's new ID is recorded with the addition, which comes next.
+			entry.replaceId(announce);
+			index.put(entry.getId(), entry);
+		}
+
+		if (entry instanceof FolderEntry) {
+			for (Entry child : (FolderEntry) entry) {
+				index(index, child, announce);
+			}
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the whole tree. Call it on the thread that changes the
+	 * tree, or from a query passed to read(Supplier), so no change is half done.
+	 */
+	public EntrySnapshot snapshot() {
+		EntrySnapshot snapshot = new EntrySnapshot(this);
+		snapshots.add(snapshot);
+		return snapshot;
+	}
+
+	List<EntrySnapshot> getSnapshots() {
+		return snapshots;
+	}
+
+	void closed(EntrySnapshot snapshot) {
+		snapshots.remove(snapshot);
+	}
+
+	@Override
+	RootEntry copy() {
+		RootEntry copy = (RootEntry) super.copy();
+		copy.listenerSet = new CopyOnWriteArraySet<EntryListener>();
+		copy.snapshots = new CopyOnWriteArrayList<EntrySnapshot>();
+		copy.lock = new StampedLock();
+		copy.turnstile = new ReentrantLock();
+		copy.idIndex = null;
+		return copy;
+	}
+
+	public void addEntryListener(EntryListener listener) {
+		listenerSet.add(listener);
+	}
+
+	public void removeEntryListener(EntryListener listener) {
+		listenerSet.remove(listener);
+	}
+
+	boolean hasListeners() {
+		return !listenerSet.isEmpty();
+	}
+
+	void fireChange(EntryChange change) {
+		for (EntryListener listener : listenerSet) {
+			listener.entryChanged(change);
+		}
 	}
 
 	@Override
 	public String getType() {
 		return ROOT_TYPE;
 	}
+
+	@Override
+	void readField(String key, Object value) {
+		if (key.equals(USER_AGENT_KEY)) {
+			EntrySnapshot.beforeChange(this);
+			invalidateDigest();
+			userAgent = stringValue(value);
+		} else {
+			super.readField(key, value);
+		}
+	}
 }
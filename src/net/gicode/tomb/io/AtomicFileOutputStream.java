@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+
+/**
+ * Writes a replacement for a file into a temporary file beside it. Nothing
+ * happens to the original until {@link #commit()} syncs the new file to disk
+ * and moves it into place in one step, so readers and crashes see either the
+ * old file or the new one, never a partial write. A link is followed, so the
+ * file it points to is replaced, and the replacement gets the original's
+ * permissions and, where allowed, its owner.
+ *
+ * Closing only syncs the temporary file, so streams layered on top may close
+ * this one as usual. Call {@link #discard()} afterwards in any case; it removes
+ * the temporary file unless it was committed.
+ */
+public class AtomicFileOutputStream extends OutputStream {
+	private final Path target;
+	private final Path temporary;
+	private final FileChannel channel;
+
+	private boolean closed = false;
+	private boolean committed = false;
+
+	public AtomicFileOutputStream(Path target) throws IOException {
+		// Replace the file a link points to rather than the link
+		this.target = Files.exists(target) ? target.toRealPath() : target.toAbsolutePath();
+
+		// Same directory, so the final move can't cross file systems
+		temporary = Files.createTempFile(this.target.getParent(), "." + this.target.getFileName(), ".tmp");
+		try {
+			if (Files.exists(this.target)) {
+				copyAccess(this.target, temporary);
+			}
+			channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	public void commit() throws IOException {
+		close();
+
+		try {
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		committed = true;
+
+		syncDirectory();
+	}
+
+	public void discard() {
+		if (committed) {
+			return;
+		}
+
+		try {
+			channel.close();
+			Files.deleteIfExists(temporary);
+		} catch (IOException e) {
+			// Nothing more to do
+		}
+	}
+
+	private static void copyAccess(Path from, Path to) throws IOException {
+		PosixFileAttributeView posix = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+		if (posix != null) {
+			PosixFileAttributes attributes = Files.readAttributes(from, PosixFileAttributes.class);
+			// Only privileged users may give a file away, but anyone may pick their own groups
+			try {
+				posix.setOwner(attributes.owner());
+			} catch (IOException e) {
+				// Stays with whoever is saving
+			}
+			try {
+				posix.setGroup(attributes.group());
+			} catch (IOException e) {
+				// Stays with the saver's group
+			}
+			// Last, since changing the owner may clear some permissions
+			posix.setPermissions(attributes.permissions());
+			return;
+		}
+
+		AclFileAttributeView acl = Files.getFileAttributeView(to, AclFileAttributeView.class);
+		if (acl != null) {
+			AclFileAttributeView original = Files.getFileAttributeView(from, AclFileAttributeView.class);
+			try {
+				acl.setOwner(original.getOwner());
+			} catch (IOException e) {
+				// Stays with whoever is saving
+			}
+			acl.setAcl(original.getAcl());
+		}
+	}
+
+	private void syncDirectory() {
+		// Persists the rename itself. Not every platform can open a directory.
+		try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+			directory.force(true);
+		} catch (IOException e) {
+			// Best effort
+		}
+	}
+}
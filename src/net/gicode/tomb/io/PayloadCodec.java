@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression applied to a payload before it is encrypted.
+ */
+public enum PayloadCodec {
+	NONE((byte) 0, "none"),
+	DEFLATE((byte) 1, "deflate");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final byte id;
+	private final String name;
+
+	private PayloadCodec(byte id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	/**
+	 * Identifier stored in the container header.
+	 */
+	public byte getId() {
+		return id;
+	}
+
+	/**
+	 * Identifier used in settings.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	public static PayloadCodec forId(byte id) {
+		for (PayloadCodec codec : values()) {
+			if (codec.id == id) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	public static PayloadCodec forName(String name) {
+		for (PayloadCodec codec : values()) {
+			if (codec.name.equals(name)) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A deflater for this codec, or null if it doesn't compress. The caller ends
+	 * it.
+	 */
+	public Deflater newDeflater(int level) {
+		switch (this) {
+		case DEFLATE:
+			return new Deflater(level);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * An inflater for this codec, or null if it doesn't compress. The caller ends
+	 * it.
+	 */
+	public Inflater newInflater() {
+		switch (this) {
+		case DEFLATE:
+			return new Inflater();
+		default:
+			return null;
+		}
+	}
+
+	public OutputStream compress(OutputStream out, int level) {
+		Deflater deflater = newDeflater(level);
+		if (deflater == null) {
+			return out;
+		}
+
+		return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					def.end();
+				}
+			}
+		};
+	}
+
+	public InputStream decompress(InputStream in) {
+		Inflater inflater = newInflater();
+		if (inflater == null) {
+			return in;
+		}
+
+		return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inf.end();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands written data to a thread that writes it to the underlying stream, so
+ * the two sides run concurrently. At most a fixed number of buffers are in
+ * flight; a writer that gets ahead blocks until the stage catches up.
+ *
+ * The underlying stream is closed from the stage thread, so chaining several of
+ * these runs each stage of a stack of filter streams on its own thread.
+ */
+public class PipelineOutputStream extends OutputStream {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int BUFFER_COUNT = 4;
+
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final OutputStream out;
+	private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+	private final Thread thread;
+
+	private ByteBuffer current;
+	private volatile Throwable failure = null;
+	private boolean closed = false;
+
+	public PipelineOutputStream(OutputStream out, String name) {
+		this.out = out;
+
+		for (int c = 0; c < BUFFER_COUNT; ++c) {
+			free.add(ByteBuffer.allocate(BUFFER_SIZE));
+		}
+		current = free.remove();
+
+		thread = new Thread(this::drain, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		checkFailure();
+
+		while (len > 0) {
+			int count = Math.min(len, current.remaining());
+			current.put(b, off, count);
+			off += count;
+			len -= count;
+
+			if (!current.hasRemaining()) {
+				handOff();
+			}
+		}
+	}
+
+	/**
+	 * Passes buffered data to the stage without waiting for it to be written.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (closed) {
+			return;
+		}
+		checkFailure();
+
+		if (current.position() > 0) {
+			handOff();
+		}
+	}
+
+	/**
+	 * Waits for the stage to write everything and close the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			if (current.position() > 0) {
+				filled.put(current);
+			}
+			current = null;
+			filled.put(END);
+			thread.join();
+		} catch (InterruptedException e) {
+			thread.interrupt();
+			throw new InterruptedIOException();
+		}
+
+		checkFailure();
+	}
+
+	private void handOff() throws IOException {
+		try {
+			filled.put(current);
+			current = free.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable failure = this.failure;
+		if (failure != null) {
+			throw new IOException(failure.getMessage(), failure);
+		}
+	}
+
+	private void drain() {
+		try {
+			while (true) {
+				ByteBuffer buffer = filled.take();
+				if (buffer == END) {
+					break;
+				}
+
+				// After a failure keep recycling buffers, so the writer never blocks forever
+				if (failure == null) {
+					try {
+						out.write(buffer.array(), 0, buffer.position());
+					} catch (IOException | RuntimeException e) {
+						failure = e;
+					}
+				}
+
+				buffer.clear();
+				free.put(buffer);
+			}
+		} catch (InterruptedException e) {
+			failure = e;
+		} finally {
+			try {
+				out.close();
+			} catch (IOException | RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+	}
+}
@@ -40,6 +40,14 @@ public class GUIPreferences {
 		preferences.put("LAST_FILE_CHOOSER_PATH", path);
 	}
 
+	public boolean readAutosave() {
+		return preferences.getBoolean("AUTOSAVE", true);
+	}
+
+	public void storeAutosave(boolean autosave) {
+		preferences.putBoolean("AUTOSAVE", autosave);
+	}
+
 	public int readPasswordGeneratorCharset() {
 		return preferences.getInt("PASSWORD_GENERATOR_CHARSET", 0);
 	}
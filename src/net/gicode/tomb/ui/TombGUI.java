@@ -15,13 +15,16 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
-import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 
 import javax.swing.Box;
 import javax.swing.DropMode;
 import javax.swing.Icon;
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -34,6 +37,7 @@ import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTree;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 import javax.swing.border.EmptyBorder;
@@ -47,6 +51,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 
+import net.gicode.tomb.TombException;
 import net.gicode.tomb.TombFile;
 import net.gicode.tomb.entry.Entry;
 import net.gicode.tomb.entry.FolderEntry;
@@ -61,6 +66,7 @@ public class TombGUI {
 	public static final int CLIPBOARD_ERASE_PASSWORD_TIMEOUT = 120 * 1000; // milliseconds
 
 	private static final String WINDOW_TITLE = "%s - Tomb Password Manager";
+	private static final int AUTOSAVE_DELAY = 2000; // milliseconds
 
 	private JFrame tombFrame;
 
@@ -71,11 +77,25 @@ public class TombGUI {
 	private PasswordGeneratorDialog generator = null;
 
 	private TombFile tombFile = new TombFile();
-	private Instant lastSaved = Instant.now();
+	private long savedGeneration = tombFile.getGeneration();
 	private String location = null;
 	private String password = null;
 	private boolean titleDirty = false;
 
+	// Saves run one at a time off the event thread. Saves asked for meanwhile wait
+	// and run as one once it finishes.
+	private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Tomb save");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Timer autosaveTimer = new Timer(AUTOSAVE_DELAY, event -> autosave());
+	private boolean autosave;
+	private boolean saving = false;
+	private String queuedSaveLocation = null;
+	private boolean queuedSaveReportsErrors = false;
+	private String saveStatus = null;
+
 	private int newFolderId = 1;
 	private int newPasswordId = 1;
 
@@ -100,6 +120,9 @@ public class TombGUI {
 	}
 
 	private void initialize() {
+		autosave = preferences.readAutosave();
+		autosaveTimer.setRepeats(false);
+
 		tombFrame = new JFrame();
 		tombFrame.setBounds(preferences.readWindowBounds());
 		tombFrame.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
@@ -122,7 +145,7 @@ public class TombGUI {
 		mntmNew.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				if (tombFile.getUpdated().isAfter(lastSaved)) {
+				if (isDirty()) {
 					int response = JOptionPane.showConfirmDialog(tombFrame,
 							"Your changes will be lost.  Create a fresh tomb anyways?", "Are you sure?",
 							JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
@@ -135,7 +158,7 @@ public class TombGUI {
 				tombFile = new TombFile();
 				location = null;
 				password = null;
-				lastSaved = Instant.now();
+				tombReplaced();
 
 				treeModel = new TombTreeModel(tombFile.getRoot());
 				tree.setModel(treeModel);
@@ -150,7 +173,7 @@ public class TombGUI {
 		mntmOpen.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent event) {
-				if (tombFile.getUpdated().isAfter(lastSaved)) {
+				if (isDirty()) {
 					int response = JOptionPane.showConfirmDialog(tombFrame,
 							"Your changes will be lost.  Open another tomb anyways?", "Unsaved Changes",
 							JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
@@ -172,7 +195,10 @@ public class TombGUI {
 		mntmSave.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent event) {
-				saveTomb(false);
+				String saveLocation = chooseSaveLocation(false);
+				if (saveLocation != null) {
+					startSave(saveLocation, true);
+				}
 			}
 		});
 		mnFile.add(mntmSave);
@@ -181,11 +207,29 @@ public class TombGUI {
 		mntmSaveAs.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent event) {
-				saveTomb(true);
+				String saveLocation = chooseSaveLocation(true);
+				if (saveLocation != null) {
+					startSave(saveLocation, true);
+				}
 			}
 		});
 		mnFile.add(mntmSaveAs);
 
+		JCheckBoxMenuItem mntmAutosave = new JCheckBoxMenuItem("Save automatically", autosave);
+		mntmAutosave.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent event) {
+				autosave = mntmAutosave.isSelected();
+				preferences.storeAutosave(autosave);
+				if (autosave) {
+					scheduleAutosave();
+				} else {
+					autosaveTimer.stop();
+				}
+			}
+		});
+		mnFile.add(mntmAutosave);
+
 		JMenuItem mntmChangePassword = new JMenuItem("Set unlock password");
 		mntmChangePassword.addActionListener(new ActionListener() {
 			@Override
@@ -391,27 +435,42 @@ public class TombGUI {
 			return;
 		}
 
+		// A save of the current tomb may still be running, so load into a fresh one
+		TombFile loading = new TombFile();
 		RunWithProgressDialog dialog = new RunWithProgressDialog(tombFrame, "Unable to open Tomb");
-		boolean success = dialog.execute(() -> tombFile.load(path, unlockPassword));
+		boolean success = dialog.execute(() -> loading.load(path, unlockPassword));
 
 		if (success) {
+			tombFile = loading;
 			location = path;
 			password = unlockPassword;
-			lastSaved = Instant.now();
+			tombReplaced();
 
 			initializeTreeModel();
 			updateTitle();
 		}
 	}
 
-	private boolean saveTomb(boolean saveAs) {
+	private void tombReplaced() {
+		savedGeneration = tombFile.getGeneration();
+		autosaveTimer.stop();
+		queuedSaveLocation = null;
+		queuedSaveReportsErrors = false;
+		saveStatus = null;
+	}
+
+	/**
+	 * Asks for anything a save still needs, and returns where to save, or null if
+	 * the user cancelled.
+	 */
+	private String chooseSaveLocation(boolean saveAs) {
 		if (password == null) {
 			SetPasswordDialog passwordDialog = new SetPasswordDialog();
 			String newPassword = passwordDialog.getPassword(tombFrame);
 			if (newPassword == null) {
 				JOptionPane.showMessageDialog(tombFrame, "Unable to save without password.", "Missing Password",
 						JOptionPane.ERROR_MESSAGE);
-				return false;
+				return null;
 			}
 			password = newPassword;
 		}
@@ -420,33 +479,138 @@ public class TombGUI {
 		if (saveAs || (saveLocation == null)) {
 			int returnVal = chooser.showSaveDialog(tombFrame);
 			if (returnVal != JFileChooser.APPROVE_OPTION) {
-				return false;
+				return null;
 			}
 			saveLocation = chooser.getSelectedFile().getPath();
 		}
-		// Necessary for reference in lambda
-		final String finalSaveLocation = saveLocation;
+		return saveLocation;
+	}
 
-		RunWithProgressDialog dialog = new RunWithProgressDialog(tombFrame, "Error Saving File");
-		boolean success = dialog.execute(() -> tombFile.save(finalSaveLocation, password));
+	private void scheduleAutosave() {
+		// Restarting on every edit waits for a pause in typing
+		if (autosave && (location != null) && (password != null) && isDirty()) {
+			autosaveTimer.restart();
+		}
+	}
 
-		if (success) {
-			location = saveLocation;
-			lastSaved = Instant.now();
+	private void autosave() {
+		if (autosave && (location != null) && (password != null) && isDirty()) {
+			startSave(location, false);
+		}
+	}
+
+	/**
+	 * Saves a snapshot of the tomb in the background. Errors only interrupt the user
+	 * when they asked for the save.
+	 */
+	private void startSave(String saveLocation, boolean reportErrors) {
+		if (saving) {
+			queuedSaveLocation = saveLocation;
+			queuedSaveReportsErrors |= reportErrors;
+			return;
+		}
+		autosaveTimer.stop();
+
+		TombFile file = tombFile;
+		TombFile.PreparedSave save = file.prepareSave(saveLocation, password);
+		saving = true;
+		saveStatus = "saving";
+		updateTitle();
+
+		saveExecutor.execute(() -> {
+			String error = null;
+			try {
+				save.run();
+			} catch (TombException e) {
+				error = e.getMessage();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				error = e.toString();
+			}
+
+			String finalError = error;
+			EventQueue.invokeLater(() -> saveFinished(file, saveLocation, save.getGeneration(), finalError, reportErrors));
+		});
+	}
+
+	private void saveFinished(TombFile file, String saveLocation, long generation, String error,
+			boolean reportErrors) {
+		saving = false;
+
+		// Ignore the outcome for a tomb that has since been closed
+		if (file == tombFile) {
+			if (error == null) {
+				location = saveLocation;
+				savedGeneration = generation;
+				saveStatus = null;
+			} else {
+				saveStatus = "not saved";
+				if (reportErrors) {
+					JOptionPane.showMessageDialog(tombFrame, error, "Error Saving File", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}
+
+		String queuedLocation = queuedSaveLocation;
+		boolean queuedReportsErrors = queuedSaveReportsErrors;
+		queuedSaveLocation = null;
+		queuedSaveReportsErrors = false;
+
+		if ((queuedLocation != null) && (queuedReportsErrors || isDirty())) {
+			startSave(queuedLocation, queuedReportsErrors);
+		} else {
 			updateTitle();
+			scheduleAutosave();
 		}
+	}
 
-		return success;
+	/**
+	 * Blocks until background saves, including any queued, have finished.
+	 */
+	private boolean waitForSaves() {
+		// A queued save starts as the one ahead of it finishes, while the dialog is up
+		while (saving) {
+			RunWithProgressDialog dialog = new RunWithProgressDialog(tombFrame, "Error Saving File");
+			boolean finished = dialog.execute(() -> {
+				try {
+					saveExecutor.submit(() -> {
+					}).get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new TombException("Interrupted while saving (" + e.getMessage() + ").");
+				}
+			});
+			if (!finished) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	private void quit() {
-		if (tombFile.getUpdated().isAfter(lastSaved)) {
+		autosaveTimer.stop();
+		if (!waitForSaves()) {
+			return;
+		}
+
+		if (isDirty()) {
 			int response = JOptionPane.showConfirmDialog(tombFrame, "Would you like to save changes before exiting?",
 					"Unsaved Changes", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
 
-			if ((response == JOptionPane.CANCEL_OPTION) || ((response == JOptionPane.YES_OPTION) && !saveTomb(false))) {
+			if (response == JOptionPane.CANCEL_OPTION) {
 				return;
 			}
+			if (response == JOptionPane.YES_OPTION) {
+				String saveLocation = chooseSaveLocation(false);
+				if (saveLocation == null) {
+					return;
+				}
+
+				// Nothing else may happen before exiting, so wait for this one
+				RunWithProgressDialog dialog = new RunWithProgressDialog(tombFrame, "Error Saving File");
+				if (!dialog.execute(() -> tombFile.save(saveLocation, password))) {
+					return;
+				}
+			}
 		}
 
 		preferences.storeWindowBounds(tombFrame.getBounds());
@@ -455,11 +619,16 @@ public class TombGUI {
 		System.exit(0);
 	}
 
+	private boolean isDirty() {
+		return tombFile.getGeneration() != savedGeneration;
+	}
+
 	private void updateTitle() {
 		updateTitle(true);
 	}
 
 	private void updateDirty() {
+		scheduleAutosave();
 		updateTitle(false);
 	}
 
@@ -474,11 +643,15 @@ public class TombGUI {
 		}
 
 		titleDirty = false;
-		if (tombFile.getUpdated().isAfter(lastSaved)) {
+		if (isDirty()) {
 			fileName = "*" + fileName;
 			titleDirty = true;
 		}
 
+		if (saveStatus != null) {
+			fileName += " (" + saveStatus + ")";
+		}
+
 		tombFrame.setTitle(String.format(WINDOW_TITLE, fileName));
 	}
 
@@ -93,9 +93,10 @@ public class EntryTransferHandler extends TransferHandler {
 
 		Entry entry = sourceFolder.get(sourceIndex);
 
-		if ((sourceFolder == destFolder) && (destIndex <= sourceIndex)) {
+		if (sourceFolder == destFolder) {
+			// Never hold the entry twice in one folder, its name and position are tracked once
 			treeModel.deleteEntry(sourcePath, sourceIndex);
-			treeModel.addEntry(destPath, entry, destIndex);
+			treeModel.addEntry(destPath, entry, (destIndex > sourceIndex) ? destIndex - 1 : destIndex);
 		} else {
 			treeModel.addEntry(destPath, entry, destIndex);
 			treeModel.deleteEntry(sourcePath, sourceIndex);
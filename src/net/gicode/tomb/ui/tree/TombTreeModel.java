@@ -6,7 +6,7 @@
  */
 package net.gicode.tomb.ui.tree;
 
-import java.util.LinkedHashSet;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
@@ -20,11 +20,11 @@ import net.gicode.tomb.entry.RootEntry;
 public class TombTreeModel implements TreeModel {
 
 	private RootEntry root;
-	private LinkedHashSet<TreeModelListener> listenerSet;
+	private CopyOnWriteArraySet<TreeModelListener> listenerSet;
 
 	public TombTreeModel(RootEntry root) {
 		this.root = root;
-		listenerSet = new LinkedHashSet<TreeModelListener>();
+		listenerSet = new CopyOnWriteArraySet<TreeModelListener>();
 	}
 
 	@Override
@@ -56,15 +56,7 @@ public class TombTreeModel implements TreeModel {
 			return -1;
 		}
 
-		int index = 0;
-		for (Entry child : (FolderEntry) folder) {
-			if (child == entry) {
-				return index;
-			}
-			index += 1;
-		}
-
-		return -1;
+		return ((FolderEntry) folder).indexOf((Entry) entry);
 	}
 
 	@Override
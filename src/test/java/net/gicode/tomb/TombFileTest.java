@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.gicode.tomb.crypto.AeadAlgorithm;
+import net.gicode.tomb.crypto.KdfParameters;
+import net.gicode.tomb.entry.PasswordEntry;
+import net.gicode.tomb.entry.RootEntry;
+
+public class TombFileTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Preferences preferences;
+	private Preferences saved;
+
+	private Path path;
+	private String location;
+
+	@Before
+	public void setUp() throws Exception {
+		preferences = Preferences.userNodeForPackage(TombFile.class);
+		saved = Preferences.userRoot().node("tomb-test-saved");
+		for (String key : preferences.keys()) {
+			saved.put(key, preferences.get(key, null));
+		}
+
+		// Keep Argon2 cheap
+		new TombPreferences().storeKdfParameters(new KdfParameters(8 * 1024, 1, 1));
+		new TombPreferences().storeCipher(AeadAlgorithm.AES_GCM);
+
+		path = folder.getRoot().toPath().resolve("test.tomb");
+		location = path.toString();
+	}
+
+	@After
+	public void tearDown() throws BackingStoreException {
+		preferences.clear();
+		for (String key : saved.keys()) {
+			preferences.put(key, saved.get(key, null));
+		}
+		saved.removeNode();
+	}
+
+	@Test
+	public void passwordChangeRetriedAfterFailedSave() throws Exception {
+		TombFile tomb = createTomb("old");
+
+		tomb.getRoot().addEntry(new PasswordEntry("Third", "", "user", "password"));
+		saveFailing(tomb, "new");
+		tomb.save(location, "new");
+
+		assertEquals(3, load("new").getRoot().size());
+		try {
+			load("old");
+			fail("The old password still unlocks the file");
+		} catch (TombException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void cipherChangeRetriedAfterFailedSave() throws Exception {
+		TombFile tomb = createTomb("password");
+
+		new TombPreferences().storeCipher(AeadAlgorithm.CHACHA20_POLY1305);
+		tomb.getRoot().addEntry(new PasswordEntry("Third", "", "user", "password"));
+		saveFailing(tomb, "password");
+		tomb.save(location, "password");
+
+		assertEquals(3, load("password").getRoot().size());
+	}
+
+	private TombFile createTomb(String password) throws TombException {
+		RootEntry root = new RootEntry();
+		root.addEntry(new PasswordEntry("First", "", "user", "password"));
+		root.addEntry(new PasswordEntry("Second", "", "user", "password"));
+		new TombFile(root).save(location, password);
+		return load(password);
+	}
+
+	private TombFile load(String password) throws TombException {
+		TombFile tomb = new TombFile();
+		tomb.load(location, password);
+		return tomb;
+	}
+
+	/**
+	 * Saves while a directory stands in the file's place, so writing the new file
+	 * fails at the last step, then puts the file back as it was.
+	 */
+	private void saveFailing(TombFile tomb, String password) throws IOException {
+		Path aside = folder.getRoot().toPath().resolve("aside.tomb");
+		Files.move(path, aside);
+		Files.createDirectory(path);
+		Files.createFile(path.resolve("blocker"));
+		try {
+			tomb.save(location, password);
+			fail("The save should have failed");
+		} catch (TombException e) {
+			// Expected
+		} finally {
+			Files.delete(path.resolve("blocker"));
+			Files.delete(path);
+			Files.move(aside, path);
+		}
+	}
+}
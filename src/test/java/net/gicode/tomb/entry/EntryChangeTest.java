@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EntryChangeTest {
+	@Test
+	public void replayKeepsUpdateTimes() throws Exception {
+		RootEntry root = new RootEntry();
+		FolderEntry folder = new FolderEntry("Folder", "");
+		root.addEntry(folder);
+		folder.addEntry(new PasswordEntry("First", "", "user", "password"));
+		folder.addEntry(new PasswordEntry("Second", "", "user", "password"));
+		RootEntry original = copy(root);
+
+		List<EntryChange> changes = new ArrayList<EntryChange>();
+		root.addEntryListener(change -> changes.add(EntryChange.fromJSON(change.toJSON())));
+		folder.addEntry(new PasswordEntry("Third", "", "user", "password"), 1);
+		folder.get(0).setName("Renamed");
+		folder.remove(2);
+
+		// Replaying later must not make anything newer than the edits were
+		Thread.sleep(20);
+		for (EntryChange change : changes) {
+			change.apply(original);
+		}
+
+		assertEquals(root.export(2), original.export(2));
+		assertEquals(root.getNewestUpdateMillis(), original.getNewestUpdateMillis());
+		FolderEntry replayed = (FolderEntry) original.get(0);
+		assertEquals(folder.getUpdatedMillis(), replayed.getUpdatedMillis());
+		assertEquals(folder.getNewestUpdateMillis(), replayed.getNewestUpdateMillis());
+	}
+
+	private static RootEntry copy(RootEntry root) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (EntrySnapshot snapshot = root.snapshot()) {
+			BinaryEntryCodec.write(snapshot, out);
+		}
+		return BinaryEntryCodec.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.entry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class EntryConcurrencyTest {
+	private static final int ENTRIES = 10000;
+	private static final int CHANGES = 100000;
+
+	/**
+	 * Readers must never see the tree in a state no single change could have left
+	 * it in.
+	 */
+	@Test(timeout = 120000)
+	public void readersSeeConsistentTree() throws IOException {
+		new ConcurrencyBenchmark().run(ENTRIES, CHANGES, EntryConcurrencyTest::check);
+	}
+
+	@Test(timeout = 120000)
+	public void snapshotKeepsTreeAsTaken() throws Exception {
+		RootEntry root = new RootEntry();
+		for (int c = 0; c < 20; ++c) {
+			FolderEntry folder = new FolderEntry("Folder " + c, "");
+			root.addEntry(folder);
+			for (int d = 0; d < 50; ++d) {
+				folder.addEntry(new PasswordEntry("Site " + d, "", "user" + d, "password" + d));
+			}
+		}
+
+		ExecutorService saver = Executors.newSingleThreadExecutor();
+		try {
+			for (int round = 0; round < 5; ++round) {
+				String expected = root.export(2);
+				EntrySnapshot snapshot = root.snapshot();
+				Future<String> saved = saver.submit(() -> {
+					try (EntrySnapshot closing = snapshot) {
+						ByteArrayOutputStream out = new ByteArrayOutputStream();
+						BinaryEntryCodec.write(closing, out);
+						return BinaryEntryCodec.read(new ByteArrayInputStream(out.toByteArray())).export(2);
+					}
+				});
+
+				// Change the tree in every way a save could miss, and move some out of it
+				RootEntry other = new RootEntry();
+				for (int c = 0; !saved.isDone() || (c < 100); ++c) {
+					FolderEntry folder = (FolderEntry) root.get(c % root.size());
+					FolderEntry next = (FolderEntry) root.get((c + 1) % root.size());
+					folder.addEntry(new PasswordEntry("Added " + c, "", "", ""), 0);
+					folder.get(folder.size() / 2).setName("Renamed " + c);
+					((PasswordEntry) folder.get(folder.size() - 1)).setPassword("changed" + c);
+					Entry moving = folder.get(1);
+					folder.removeFirstEntry(moving);
+					next.addEntry(moving);
+					if (c % 10 == 0) {
+						Entry leaving = folder.get(2);
+						other.addEntry(leaving);
+						folder.removeFirstEntry(leaving);
+						leaving.setName("Gone " + c);
+					}
+				}
+
+				assertEquals("round " + round, expected, saved.get());
+				assertTrue(root.getSnapshots().isEmpty());
+			}
+		} finally {
+			saver.shutdown();
+		}
+	}
+
+	private static void check(RootEntry root, FolderEntry folder) {
+		int position = 0;
+		for (Entry child : folder) {
+			assertSame(child.getName() + " has the wrong parent", folder, child.getParent());
+			assertEquals(child.getName() + " is at the wrong index", position, folder.indexOf(child));
+			assertSame(child.getName() + " is missing from the ID index", child, root.findById(child.getId()));
+
+			Entry named = folder.findFirst(child.getName());
+			assertNotNull(child.getName() + " is missing from the name index", named);
+			assertEquals(child.getName(), named.getName());
+			assertTrue(child.getName() + " is not the first with its name", folder.indexOf(named) <= position);
+
+			assertTrue(folder.getName() + " is older than " + child.getName(),
+					child.getNewestUpdateMillis() <= folder.getNewestUpdateMillis());
+			++position;
+		}
+		assertEquals(folder.getName() + " has the wrong size", position, folder.size());
+	}
+}
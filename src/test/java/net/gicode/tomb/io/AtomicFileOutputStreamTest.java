@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2026 Rusty Burchfield
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT License.  See the LICENSE file for details.
+ */
+package net.gicode.tomb.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AtomicFileOutputStreamTest {
+	private static final byte[] CONTENTS = { 1, 2, 3 };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replacesFileBehindLink() throws IOException {
+		Path file = folder.newFile("file").toPath();
+		Path link = folder.getRoot().toPath().resolve("link");
+		try {
+			Files.createSymbolicLink(link, file);
+		} catch (UnsupportedOperationException e) {
+			assumeTrue("No symbolic links here", false);
+		}
+
+		write(link);
+
+		assertTrue(Files.isSymbolicLink(link));
+		assertArrayEquals(CONTENTS, Files.readAllBytes(file));
+	}
+
+	@Test
+	public void keepsPermissions() throws IOException {
+		assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		Path file = folder.newFile("file").toPath();
+		Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r-----"));
+
+		write(file);
+
+		assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+		assertArrayEquals(CONTENTS, Files.readAllBytes(file));
+	}
+
+	private static void write(Path path) throws IOException {
+		AtomicFileOutputStream out = new AtomicFileOutputStream(path);
+		try {
+			out.write(CONTENTS);
+			out.commit();
+		} finally {
+			out.discard();
+		}
+	}
+}